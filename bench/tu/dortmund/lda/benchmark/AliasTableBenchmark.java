@@ -0,0 +1,60 @@
+package tu.dortmund.lda.benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tu.dortmund.lda.data_structure.AliasTable;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AliasTableBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    public int size;
+
+    private AliasTable table;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        random = new SplittableRandom(42);
+        table = new AliasTable(size);
+        double[] p = table.getUnnormalizedProbability();
+        double sum = 0.0;
+        for (int i = 0; i < size; i++) {
+            // skewed like the topic counts of a word
+            p[i] = 1.0 / (random.nextInt(size) + 1);
+            sum += p[i];
+        }
+        table.setProbabilitySum(sum);
+        table.construct();
+    }
+
+    @Benchmark
+    public AliasTable construct() {
+        table.construct();
+        return table;
+    }
+
+    @Benchmark
+    public int sample() {
+        return table.sample(random);
+    }
+}
@@ -0,0 +1,56 @@
+package tu.dortmund.lda.benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tu.dortmund.lda.data_structure.FPlusTree;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FPlusTreeBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    public int size;
+
+    private FPlusTree tree;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        random = new SplittableRandom(42);
+        double[] weights = new double[size];
+        for (int i = 0; i < size; i++) {
+            weights[i] = random.nextDouble();
+        }
+        tree = new FPlusTree(size);
+        tree.build(weights);
+    }
+
+    @Benchmark
+    public FPlusTree update() {
+        tree.update(random.nextInt(size), random.nextDouble());
+        return tree;
+    }
+
+    @Benchmark
+    public int sample() {
+        return tree.sample(random);
+    }
+}
@@ -0,0 +1,119 @@
+package tu.dortmund.lda.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tu.dortmund.lda.LdaModel;
+import tu.dortmund.lda.sampler.AliasLda;
+import tu.dortmund.lda.sampler.FTreeLda;
+import tu.dortmund.lda.sampler.GibbsLda;
+import tu.dortmund.lda.sampler.LightLda;
+import tu.dortmund.lda.sampler.SparseLda;
+import tu.dortmund.lda.sampler.WarpLda;
+
+/**
+ * Measures how many word tokens a sampler processes per second. Every
+ * benchmark invocation is one full iteration over a synthetic corpus, the
+ * tokens/second rate is reported as the secondary metric "tokens".
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SamplerBenchmark {
+
+    @Param({ "GibbsLda", "SparseLda", "AliasLda", "LightLda", "FTreeLda", "WarpLda" })
+    public String sampler;
+
+    @Param({ "100", "1000" })
+    public int numTopics;
+
+    @Param({ "10000" })
+    public int vocabularySize;
+
+    @Param({ "50", "500" })
+    public int documentLength;
+
+    /**
+     * Total number of tokens of the corpus. The number of documents is derived
+     * from it, such that all parameter combinations do the same amount of work
+     * per iteration (apart from the sampler itself).
+     */
+    @Param({ "200000" })
+    public int corpusSize;
+
+    private LdaModel model;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Tokens {
+        public long tokens;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int[][] documents = generateDocuments(corpusSize / documentLength, documentLength, vocabularySize, 42);
+        model = createSampler(sampler, documents, vocabularySize, numTopics);
+        model.setSeed(42);
+        model.initialize();
+    }
+
+    @Benchmark
+    public void iteration(Tokens counter) {
+        model.run(1);
+        counter.tokens += model.getNumTokens();
+    }
+
+    static LdaModel createSampler(String name, int[][] documents, int vocabularySize, int numTopics) {
+        switch (name) {
+        case "GibbsLda":
+            return new GibbsLda(documents, vocabularySize, numTopics);
+        case "SparseLda":
+            return new SparseLda(documents, vocabularySize, numTopics);
+        case "AliasLda":
+            return new AliasLda(documents, vocabularySize, numTopics);
+        case "LightLda":
+            return new LightLda(documents, vocabularySize, numTopics);
+        case "FTreeLda":
+            return new FTreeLda(documents, vocabularySize, numTopics);
+        case "WarpLda":
+            return new WarpLda(documents, vocabularySize, numTopics);
+        default:
+            throw new IllegalArgumentException("Unknown sampler " + name);
+        }
+    }
+
+    /**
+     * Generates documents whose lengths are uniformly distributed between 1 and
+     * twice the average length. The word frequencies follow approximately Zipf's
+     * law like in natural language: word w is drawn with a probability
+     * proportional to 1 / (w + 1).
+     */
+    static int[][] generateDocuments(int numDocuments, int averageLength, int vocabularySize, long seed) {
+        Random random = new Random(seed);
+        int[][] documents = new int[Math.max(1, numDocuments)][];
+        for (int d = 0; d < documents.length; d++) {
+            documents[d] = new int[random.nextInt(2 * averageLength) + 1];
+            for (int i = 0; i < documents[d].length; i++) {
+                documents[d][i] = (int) Math.pow(vocabularySize + 1, random.nextDouble()) - 1;
+            }
+        }
+        return documents;
+    }
+}
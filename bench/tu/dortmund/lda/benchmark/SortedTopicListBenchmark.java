@@ -0,0 +1,90 @@
+package tu.dortmund.lda.benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tu.dortmund.lda.data_structure.SortedTopicList;
+
+/**
+ * Simulates the topic list of a single word in SparseLda. The word has
+ * numTokens tokens whose topics follow a skewed distribution.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SortedTopicListBenchmark {
+
+    @Param({ "100", "1000" })
+    public int numTopics;
+
+    @Param({ "10000" })
+    public int numTokens;
+
+    private SortedTopicList list;
+    private int[] tokenTopics;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        random = new SplittableRandom(42);
+        tokenTopics = new int[numTokens];
+        int[] counts = new int[numTopics];
+        for (int i = 0; i < numTokens; i++) {
+            tokenTopics[i] = drawTopic();
+            counts[tokenTopics[i]]++;
+        }
+        list = new SortedTopicList(numTopics, Math.min(numTopics, numTokens));
+        for (int t = 0; t < numTopics; t++) {
+            if (counts[t] > 0) {
+                list.addTopic(t, counts[t]);
+            }
+        }
+        list.sort();
+    }
+
+    private int drawTopic() {
+        return (int) Math.pow(numTopics + 1, random.nextDouble()) - 1;
+    }
+
+    /**
+     * Assigns a random token to a new topic, like SparseLda does when a topic
+     * changes.
+     */
+    @Benchmark
+    public SortedTopicList reassignToken() {
+        int token = random.nextInt(numTokens);
+        int topic = drawTopic();
+        list.decrementTopicCount(tokenTopics[token]);
+        list.incrementTopicCount(topic);
+        tokenTopics[token] = topic;
+        return list;
+    }
+
+    /**
+     * Iterates over the list like the q-bucket loop of SparseLda.
+     */
+    @Benchmark
+    public long iterate() {
+        long sum = 0;
+        for (int i = 0; i < list.size(); i++) {
+            sum += list.getTopic(i) * (long) list.getCount(i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,4 @@
+package tu.dortmund.lda.benchmark.jmh_generated;
+public class AliasTableBenchmark_jmhType extends AliasTableBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package tu.dortmund.lda.benchmark.jmh_generated;
+public class FPlusTreeBenchmark_jmhType extends FPlusTreeBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package tu.dortmund.lda.benchmark.jmh_generated;
+public class SamplerBenchmark_Tokens_jmhType extends SamplerBenchmark_Tokens_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package tu.dortmund.lda.benchmark.jmh_generated;
+public class SamplerBenchmark_jmhType extends SamplerBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package tu.dortmund.lda.benchmark.jmh_generated;
+public class SortedTopicListBenchmark_jmhType extends SortedTopicListBenchmark_jmhType_B3 {
+}
+
@@ -27,6 +27,7 @@ public class Main {
         ldaSamplers.add(new SparseLda(documents, vocabularySize, numTopics));
         ldaSamplers.add(new AliasLda(documents, vocabularySize, numTopics));
         ldaSamplers.add(new LightLda(documents, vocabularySize, numTopics));
+        ldaSamplers.add(new WarpLda(documents, vocabularySize, numTopics));
         ldaSamplers.add(new FTreeLda(documents, vocabularySize, numTopics));
 
         for (LdaModel ldaSampler : ldaSamplers) {
@@ -61,6 +62,8 @@ public class Main {
 
     /**
      * Executes a LDAModel and measures the total time that the execution took.
+     * This is only a quick check without warmup, use the JMH benchmarks (ant
+     * bench) for reliable numbers.
      * 
      * @param ldaSampler The LDAModel that should be tested.
      * @param iterations Number of iterations.
@@ -77,15 +80,15 @@ public class Main {
             if (i % llSteps == 0) {
                 System.out.println("LogLikelihood after " + i + " iterations: " + ldaSampler.getLogLikelihood());
             }
-            long startTime = System.currentTimeMillis();
+            long startTime = System.nanoTime();
             ldaSampler.run(1);
-            long endTime = System.currentTimeMillis();
+            long endTime = System.nanoTime();
 
             long deltaTime = endTime - startTime;
             totalTime += deltaTime;
 
         }
         System.out.println("LogLikelihood after " + iterations + " iterations: " + ldaSampler.getLogLikelihood());
-        System.out.println("Execution took " + totalTime / 1000 + " seconds");
+        System.out.printf("Execution took %.2f seconds%n", totalTime / 1e9);
     }
 }
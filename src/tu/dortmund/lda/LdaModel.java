@@ -1,5 +1,13 @@
 package tu.dortmund.lda;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
+import tu.dortmund.lda.convergence.ConvergenceCriterion;
+import tu.dortmund.lda.corpus.Corpus;
+import tu.dortmund.lda.kernel.Kernels;
+import tu.dortmund.lda.metrics.IterationListener;
+
 public interface LdaModel {
     /**
      * This method allocates the necessary memory and data structures in order to
@@ -15,6 +23,71 @@ public interface LdaModel {
      */
     public void run(int iterations);
 
+    /**
+     * Let the model run until it has converged instead of a fixed number of
+     * iterations. The criterion is evaluated on snapshots of the count matrices
+     * in a background thread, so the sampling never waits for it.
+     * 
+     * @param criterion     The convergence criterion, for example a
+     *                      {@link tu.dortmund.lda.convergence.LogLikelihoodCriterion}.
+     * @param maxIterations Upper bound of the number of iterations.
+     * @return Number of iterations that were executed.
+     */
+    public int runUntilConverged(ConvergenceCriterion criterion, int maxIterations);
+
+    /**
+     * Registers a listener that receives the metrics of every iteration, for
+     * example tokens per second, Metropolis Hastings acceptance rates and
+     * allocated bytes. Without listeners (and without a JFR recording of
+     * tu.dortmund.lda.Iteration events) the samplers do not collect any metrics.
+     * 
+     * @param listener The listener.
+     */
+    public void addIterationListener(IterationListener listener);
+
+    public void removeIterationListener(IterationListener listener);
+
+    /**
+     * Writes the state of the model to a binary checkpoint file, such that an
+     * interrupted run can be resumed with {@link #restoreCheckpoint(Path)}. This
+     * is cheap enough to be done every few iterations.
+     * 
+     * @param path The checkpoint file. An existing file is replaced atomically.
+     */
+    public void saveCheckpoint(Path path) throws IOException;
+
+    /**
+     * Restores the state of the model from a checkpoint file. This replaces
+     * {@link #initialize()}. The model has to be created with the same documents,
+     * vocabulary size and number of topics as the model that saved the
+     * checkpoint.
+     * 
+     * @param path The checkpoint file.
+     */
+    public void restoreCheckpoint(Path path) throws IOException;
+
+    /**
+     * Appends new documents to an initialized model, for example the documents
+     * of a stream. The count matrices and the data structures of the sampler are
+     * updated incrementally, so the model can continue with {@link #run(int)}
+     * instead of being trained from scratch. The new documents get the indices
+     * after the existing ones.
+     * 
+     * @param newDocuments The new documents. They must not change afterwards.
+     */
+    public void addDocuments(Corpus newDocuments);
+
+    /**
+     * Removes the oldest documents from an initialized model and subtracts their
+     * topic assignments from the count matrices. Together with
+     * {@link #addDocuments(Corpus)} this keeps the model on a sliding window of a
+     * stream. The remaining documents move to the front, so document i becomes
+     * document i - count.
+     * 
+     * @param count Number of documents that are removed.
+     */
+    public void retireDocuments(int count);
+
     public double[][] getTheta();
 
     public double[][] getPhi();
@@ -33,8 +106,83 @@ public interface LdaModel {
 
     public double getLogLikelihood();
 
+    /**
+     * Maintain the log likelihood incrementally while sampling, such that
+     * {@link #getLogLikelihood()} takes constant time and can be called after
+     * every iteration.
+     * 
+     * @param track True to track the log likelihood, false by default.
+     */
+    public void setLogLikelihoodTracking(boolean track);
+
+    /**
+     * Store the counts and the alias tables in compact form: topic word counts
+     * with 8 or 16 bits that are widened on overflow, document topic tables with
+     * one int per topic and float alias tables. This takes effect when the count
+     * matrices are built by the next {@link #initialize()} or restoreCheckpoint.
+     * 
+     * @param compact True for compact storage, false by default.
+     */
+    public void setCompactStorage(boolean compact);
+
+    /**
+     * Keep the topic assignments and the topic word counts in memory mapped
+     * files instead of the heap and stream the documents through the sampler in
+     * blocks, such that only the assignments and document topic counts of one
+     * block are in the heap at a time. Use it together with a
+     * {@link tu.dortmund.lda.corpus.MappedCorpus} for corpora that do not fit
+     * into main memory. This takes effect with the next {@link #initialize()}.
+     * Checkpoints, convergence checks and adding or retiring documents are not
+     * supported out of core.
+     * 
+     * @param directory         Directory of the files, null to keep the model in
+     *                          the heap (the default).
+     * @param documentsPerBlock Number of documents per block.
+     */
+    public void setOutOfCore(Path directory, int documentsPerBlock);
+
+    /**
+     * Set the implementation of the dense loops over all topics, for example
+     * {@link Kernels#scalar()} or {@link Kernels#vector()}.
+     * 
+     * @param kernels The kernels, {@link Kernels#getDefault()} by default.
+     */
+    public void setKernels(Kernels kernels);
+
     public void setSeed(long seed);
 
+    public int getNumThreads();
+
+    /**
+     * Set the number of threads that run the sampling algorithm. With more than
+     * one thread the documents are partitioned between the threads. How the
+     * threads share the count matrices is determined by the parallel mode.
+     * 
+     * @param numThreads Number of threads, 1 by default.
+     */
+    public void setNumThreads(int numThreads);
+
+    public ParallelMode getParallelMode();
+
+    /**
+     * Set how multiple threads share the count matrices. This has no effect if the
+     * model runs on a single thread.
+     * 
+     * @param parallelMode The parallel mode, DATA_PARALLEL by default.
+     */
+    public void setParallelMode(ParallelMode parallelMode);
+
+    /**
+     * Recomputes the topic word counts and the topic counts from the topic
+     * assignments and compares them to the counts that the model maintains. A
+     * nonzero result means that updates got lost, which can happen with
+     * {@link ParallelMode#ASYNCHRONOUS_UNSAFE}. This method takes some computing
+     * resources!
+     * 
+     * @return Sum of the absolute differences over all counts.
+     */
+    public long getCountDrift();
+
     /**
      * Set a asymmetric alpha prior.
      * 
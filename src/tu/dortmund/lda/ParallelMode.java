@@ -0,0 +1,27 @@
+package tu.dortmund.lda;
+
+/**
+ * Determines how the threads of a multi-threaded model share the count
+ * matrices. Every thread always samples its own partition of the documents.
+ */
+public enum ParallelMode {
+    /**
+     * Approximate distributed LDA (AD-LDA). Every thread samples against a private
+     * copy of the topic word counts. The copies are merged after every iteration.
+     */
+    DATA_PARALLEL,
+
+    /**
+     * All threads update the same count matrices concurrently with atomic
+     * increments and decrements. There is no merge step, but a thread may read
+     * counts that another thread is about to change.
+     */
+    ASYNCHRONOUS,
+
+    /**
+     * Like ASYNCHRONOUS, but the shared count matrices are updated with plain
+     * increments and decrements (Hogwild). Concurrent updates of the same cell can
+     * get lost, which can be measured with {@link LdaModel#getCountDrift()}.
+     */
+    ASYNCHRONOUS_UNSAFE
+}
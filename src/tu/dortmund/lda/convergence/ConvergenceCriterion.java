@@ -0,0 +1,17 @@
+package tu.dortmund.lda.convergence;
+
+/**
+ * Decides when a model has converged, see
+ * {@link tu.dortmund.lda.LdaModel#runUntilConverged(ConvergenceCriterion, int)}.
+ * The criterion receives the snapshots of a run one after another in a
+ * background thread and may keep state between them, so an instance must only
+ * be used for a single run.
+ */
+public interface ConvergenceCriterion {
+
+    /**
+     * @param snapshot The latest snapshot of the model.
+     * @return True if the model has converged and sampling can stop.
+     */
+    public boolean isConverged(ModelSnapshot snapshot);
+}
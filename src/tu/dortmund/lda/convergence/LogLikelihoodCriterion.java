@@ -0,0 +1,38 @@
+package tu.dortmund.lda.convergence;
+
+/**
+ * The model has converged when the relative change of the log likelihood
+ * between two snapshots stayed below a tolerance for a number of snapshots in
+ * a row. The log likelihood of a Gibbs sampler fluctuates, therefore a single
+ * small change is not enough.
+ */
+public class LogLikelihoodCriterion implements ConvergenceCriterion {
+
+    private final double tolerance;
+    private final int patience;
+
+    private double previousLogLikelihood = Double.NaN;
+    private int numStable = 0;
+
+    /**
+     * @param tolerance Largest relative change |ll - previous| / |previous| that
+     *                  counts as stable, for example 1e-4.
+     * @param patience  Number of stable snapshots in a row.
+     */
+    public LogLikelihoodCriterion(double tolerance, int patience) {
+        this.tolerance = tolerance;
+        this.patience = patience;
+    }
+
+    @Override
+    public boolean isConverged(ModelSnapshot snapshot) {
+        double logLikelihood = snapshot.getLogLikelihood();
+        if (Math.abs(logLikelihood - previousLogLikelihood) <= tolerance * Math.abs(previousLogLikelihood)) {
+            numStable++;
+        } else {
+            numStable = 0;
+        }
+        previousLogLikelihood = logLikelihood;
+        return numStable >= patience;
+    }
+}
@@ -0,0 +1,27 @@
+package tu.dortmund.lda.convergence;
+
+/**
+ * Copy of the count matrices of a model after an iteration. A snapshot is
+ * taken in the sampling thread, which only copies the counts, and evaluated in
+ * a background thread, while the model continues sampling.
+ */
+public interface ModelSnapshot {
+
+    /**
+     * @return Number of iterations that the model had finished when the
+     *         snapshot was taken.
+     */
+    public long getIteration();
+
+    /**
+     * Computes the log likelihood of the snapshot. The result is cached.
+     */
+    public double getLogLikelihood();
+
+    /**
+     * @param n Number of words per topic.
+     * @return The n most frequent words of every topic, the most frequent word
+     *         first.
+     */
+    public int[][] getTopWords(int n);
+}
@@ -0,0 +1,73 @@
+package tu.dortmund.lda.convergence;
+
+import java.util.Arrays;
+
+/**
+ * The model has converged when the topics stopped changing: on average at
+ * least a given fraction of the top words of every topic has to be the same as
+ * in the previous snapshot, for a number of snapshots in a row. Unlike the log
+ * likelihood this measures what a user of the topics actually sees.
+ */
+public class TopicStabilityCriterion implements ConvergenceCriterion {
+
+    private final int numTopWords;
+    private final double minOverlap;
+    private final int patience;
+
+    private int[][] previousTopWords;
+    private int numStable = 0;
+
+    /**
+     * @param numTopWords Number of top words per topic that are compared, for
+     *                    example 20.
+     * @param minOverlap  Smallest average fraction of shared top words that
+     *                    counts as stable, for example 0.9.
+     * @param patience    Number of stable snapshots in a row.
+     */
+    public TopicStabilityCriterion(int numTopWords, double minOverlap, int patience) {
+        this.numTopWords = numTopWords;
+        this.minOverlap = minOverlap;
+        this.patience = patience;
+    }
+
+    @Override
+    public boolean isConverged(ModelSnapshot snapshot) {
+        int[][] topWords = snapshot.getTopWords(numTopWords);
+        for (int[] words : topWords) {
+            Arrays.sort(words);
+        }
+        if (previousTopWords != null && getOverlap(previousTopWords, topWords) >= minOverlap) {
+            numStable++;
+        } else {
+            numStable = 0;
+        }
+        previousTopWords = topWords;
+        return numStable >= patience;
+    }
+
+    /**
+     * @return Average fraction of the words that are in both lists of a topic.
+     *         The lists have to be sorted.
+     */
+    private static double getOverlap(int[][] a, int[][] b) {
+        double overlap = 0.0;
+        for (int topic = 0; topic < a.length; topic++) {
+            int shared = 0;
+            int i = 0;
+            int j = 0;
+            while (i < a[topic].length && j < b[topic].length) {
+                if (a[topic][i] < b[topic][j]) {
+                    i++;
+                } else if (a[topic][i] > b[topic][j]) {
+                    j++;
+                } else {
+                    shared++;
+                    i++;
+                    j++;
+                }
+            }
+            overlap += (double) shared / Math.max(1, Math.max(a[topic].length, b[topic].length));
+        }
+        return overlap / a.length;
+    }
+}
@@ -0,0 +1,39 @@
+package tu.dortmund.lda.corpus;
+
+/**
+ * Corpus that keeps every document as an int array on the heap.
+ */
+public class ArrayCorpus implements Corpus {
+
+    private final int[][] documents;
+    private final long numTokens;
+
+    public ArrayCorpus(int[][] documents) {
+        this.documents = documents;
+        long numTokens = 0;
+        for (int[] document : documents) {
+            numTokens += document.length;
+        }
+        this.numTokens = numTokens;
+    }
+
+    @Override
+    public int getNumDocuments() {
+        return documents.length;
+    }
+
+    @Override
+    public int getDocumentLength(int document) {
+        return documents[document].length;
+    }
+
+    @Override
+    public int getWord(int document, int token) {
+        return documents[document][token];
+    }
+
+    @Override
+    public long getNumTokens() {
+        return numTokens;
+    }
+}
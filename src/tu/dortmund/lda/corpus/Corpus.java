@@ -0,0 +1,27 @@
+package tu.dortmund.lda.corpus;
+
+/**
+ * Read only collection of documents. Each term in the vocabulary is represented
+ * by a unique integer and a document is the sequence of the terms of its word
+ * tokens. If for example a document is [1,1,2,3] this indicates that the
+ * document contains 4 word tokens, where the first word appears twice in the
+ * document. This representation is therefore NOT a Bag Of Words (BOW) format.
+ */
+public interface Corpus {
+
+    public int getNumDocuments();
+
+    public int getDocumentLength(int document);
+
+    /**
+     * @param document Document index
+     * @param token    Position of the token inside the document
+     * @return The term of the token.
+     */
+    public int getWord(int document, int token);
+
+    /**
+     * @return Total number of word tokens of all documents.
+     */
+    public long getNumTokens();
+}
@@ -0,0 +1,165 @@
+package tu.dortmund.lda.corpus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes documents one after another into the binary corpus format that is
+ * read by {@link MappedCorpus}. Only a small buffer is kept in memory, so
+ * corpora of any size can be written. All values are little endian.
+ *
+ * <pre>
+ * header   int magic, int version, int vocabularySize, int numDocuments,
+ *          long numTokens, long reserved (32 bytes)
+ * tokens   int[numTokens], the terms of all documents in document order
+ * padding  4 bytes if numTokens is odd, such that the offsets are aligned
+ * offsets  long[numDocuments + 1], document d consists of the tokens
+ *          offsets[d] to offsets[d + 1] - 1
+ * </pre>
+ */
+public class CorpusWriter implements Closeable {
+
+    static final int MAGIC = 0x4C444143;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final int vocabularySize;
+    private final FileChannel channel;
+
+    /**
+     * The offsets are only known after the last token, therefore they go into a
+     * temporary file first.
+     */
+    private final FileChannel offsetsChannel;
+
+    private final ByteBuffer tokenBuffer;
+    private final ByteBuffer offsetBuffer;
+
+    private int numDocuments;
+    private long numTokens;
+
+    public CorpusWriter(Path path, int vocabularySize) throws IOException {
+        this.vocabularySize = vocabularySize;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        Path directory = path.toAbsolutePath().getParent();
+        Path offsetsPath = Files.createTempFile(directory, path.getFileName().toString(), ".offsets");
+        this.offsetsChannel = FileChannel.open(offsetsPath, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+
+        this.tokenBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.offsetBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.numDocuments = 0;
+        this.numTokens = 0;
+
+        channel.position(HEADER_SIZE);
+        offsetBuffer.putLong(0);
+    }
+
+    /**
+     * Writes a corpus into the file at the given path.
+     */
+    public static void write(Path path, Corpus corpus, int vocabularySize) throws IOException {
+        try (CorpusWriter writer = new CorpusWriter(path, vocabularySize)) {
+            int[] words = new int[0];
+            for (int document = 0; document < corpus.getNumDocuments(); document++) {
+                int length = corpus.getDocumentLength(document);
+                if (words.length < length) {
+                    words = new int[length];
+                }
+                for (int token = 0; token < length; token++) {
+                    words[token] = corpus.getWord(document, token);
+                }
+                writer.addDocument(words, length);
+            }
+        }
+    }
+
+    public void addDocument(int[] document) throws IOException {
+        addDocument(document, document.length);
+    }
+
+    /**
+     * Appends a document that consists of the first length entries of words.
+     */
+    public void addDocument(int[] words, int length) throws IOException {
+        if (numDocuments == Integer.MAX_VALUE - 1) {
+            throw new IllegalStateException("The corpus can not hold more than " + numDocuments + " documents");
+        }
+        for (int token = 0; token < length; token++) {
+            if (words[token] < 0 || words[token] >= vocabularySize) {
+                throw new IllegalArgumentException(
+                        "Word " + words[token] + " is outside of the vocabulary of size " + vocabularySize);
+            }
+            if (!tokenBuffer.hasRemaining()) {
+                flush(channel, tokenBuffer);
+            }
+            tokenBuffer.putInt(words[token]);
+        }
+        numTokens += length;
+        numDocuments++;
+        if (!offsetBuffer.hasRemaining()) {
+            flush(offsetsChannel, offsetBuffer);
+        }
+        offsetBuffer.putLong(numTokens);
+    }
+
+    public int getNumDocuments() {
+        return numDocuments;
+    }
+
+    public long getNumTokens() {
+        return numTokens;
+    }
+
+    /**
+     * Appends the offsets, writes the header and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (numTokens % 2 == 1) {
+                if (!tokenBuffer.hasRemaining()) {
+                    flush(channel, tokenBuffer);
+                }
+                tokenBuffer.putInt(0);
+            }
+            flush(channel, tokenBuffer);
+            flush(offsetsChannel, offsetBuffer);
+
+            long position = 0;
+            long size = offsetsChannel.size();
+            while (position < size) {
+                position += offsetsChannel.transferTo(position, size - position, channel);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(vocabularySize).putInt(numDocuments);
+            header.putLong(numTokens).putLong(0);
+            header.flip();
+            channel.position(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        } finally {
+            offsetsChannel.close();
+            channel.close();
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,113 @@
+package tu.dortmund.lda.corpus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Corpus that is memory mapped from a file written by {@link CorpusWriter}.
+ * Opening the corpus does not read the tokens, the operating system loads
+ * the pages on first access and shares them between all processes that map
+ * the same file. The documents are stored in compressed sparse row (CSR)
+ * format: a flat token array and the offset of every document inside it.
+ * Since a single mapping is limited to 2 GB, the file is mapped in chunks of
+ * 1 GB.
+ */
+public class MappedCorpus implements Corpus {
+
+    private static final int CHUNK_BYTES_BITS = 30;
+    private static final int INT_CHUNK_BITS = CHUNK_BYTES_BITS - 2;
+    private static final int INT_CHUNK_MASK = (1 << INT_CHUNK_BITS) - 1;
+    private static final int LONG_CHUNK_BITS = CHUNK_BYTES_BITS - 3;
+    private static final int LONG_CHUNK_MASK = (1 << LONG_CHUNK_BITS) - 1;
+
+    private final int vocabularySize;
+    private final int numDocuments;
+    private final long numTokens;
+
+    private final IntBuffer[] tokens;
+    private final LongBuffer[] offsets;
+
+    public MappedCorpus(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, CorpusWriter.HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != CorpusWriter.MAGIC) {
+                throw new IOException(path + " is not a corpus file");
+            }
+            if (header.getInt(4) != CorpusWriter.VERSION) {
+                throw new IOException(path + " has the unsupported corpus version " + header.getInt(4));
+            }
+            vocabularySize = header.getInt(8);
+            numDocuments = header.getInt(12);
+            numTokens = header.getLong(16);
+
+            long tokensSize = 4 * (numTokens + numTokens % 2);
+            long offsetsPosition = CorpusWriter.HEADER_SIZE + tokensSize;
+            long offsetsSize = 8 * ((long) numDocuments + 1);
+            if (channel.size() < offsetsPosition + offsetsSize) {
+                throw new IOException(path + " is truncated");
+            }
+
+            ByteBuffer[] tokenChunks = map(channel, CorpusWriter.HEADER_SIZE, tokensSize);
+            tokens = new IntBuffer[tokenChunks.length];
+            for (int i = 0; i < tokenChunks.length; i++) {
+                tokens[i] = tokenChunks[i].asIntBuffer();
+            }
+            ByteBuffer[] offsetChunks = map(channel, offsetsPosition, offsetsSize);
+            offsets = new LongBuffer[offsetChunks.length];
+            for (int i = 0; i < offsetChunks.length; i++) {
+                offsets[i] = offsetChunks[i].asLongBuffer();
+            }
+        }
+    }
+
+    /**
+     * Maps a region of the file in chunks. The mappings stay valid after the
+     * channel is closed.
+     */
+    private static ByteBuffer[] map(FileChannel channel, long position, long size) throws IOException {
+        long chunkSize = 1L << CHUNK_BYTES_BITS;
+        ByteBuffer[] chunks = new ByteBuffer[(int) Math.max(1, (size + chunkSize - 1) / chunkSize)];
+        for (int i = 0; i < chunks.length; i++) {
+            long chunkPosition = i * chunkSize;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + chunkPosition,
+                    Math.min(chunkSize, size - chunkPosition)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return chunks;
+    }
+
+    @Override
+    public int getNumDocuments() {
+        return numDocuments;
+    }
+
+    @Override
+    public int getDocumentLength(int document) {
+        return (int) (getOffset(document + 1) - getOffset(document));
+    }
+
+    @Override
+    public int getWord(int document, int token) {
+        long position = getOffset(document) + token;
+        return tokens[(int) (position >>> INT_CHUNK_BITS)].get((int) (position & INT_CHUNK_MASK));
+    }
+
+    @Override
+    public long getNumTokens() {
+        return numTokens;
+    }
+
+    public int getVocabularySize() {
+        return vocabularySize;
+    }
+
+    private long getOffset(int document) {
+        return offsets[document >>> LONG_CHUNK_BITS].get(document & LONG_CHUNK_MASK);
+    }
+}
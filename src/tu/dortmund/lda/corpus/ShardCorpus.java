@@ -0,0 +1,66 @@
+package tu.dortmund.lda.corpus;
+
+/**
+ * View of a contiguous range of documents of another corpus, for example the
+ * shard of a worker process. Document i of the shard is document first + i of
+ * the underlying corpus.
+ */
+public class ShardCorpus implements Corpus {
+
+    private final Corpus corpus;
+    private final int first;
+    private final int numDocuments;
+    private final long numTokens;
+
+    /**
+     * @param corpus The underlying corpus.
+     * @param first  Index of the first document (inclusive).
+     * @param last   Index of the last document (exclusive).
+     */
+    public ShardCorpus(Corpus corpus, int first, int last) {
+        if (first < 0 || last < first || last > corpus.getNumDocuments()) {
+            throw new IllegalArgumentException("Invalid shard [" + first + ", " + last + ") of a corpus with "
+                    + corpus.getNumDocuments() + " documents");
+        }
+        this.corpus = corpus;
+        this.first = first;
+        this.numDocuments = last - first;
+        long numTokens = 0;
+        for (int document = first; document < last; document++) {
+            numTokens += corpus.getDocumentLength(document);
+        }
+        this.numTokens = numTokens;
+    }
+
+    /**
+     * Splits the corpus into numShards shards of about the same number of
+     * documents.
+     *
+     * @return Shard number shard.
+     */
+    public static ShardCorpus of(Corpus corpus, int shard, int numShards) {
+        int first = (int) ((long) corpus.getNumDocuments() * shard / numShards);
+        int last = (int) ((long) corpus.getNumDocuments() * (shard + 1) / numShards);
+        return new ShardCorpus(corpus, first, last);
+    }
+
+    @Override
+    public int getNumDocuments() {
+        return numDocuments;
+    }
+
+    @Override
+    public int getDocumentLength(int document) {
+        return corpus.getDocumentLength(first + document);
+    }
+
+    @Override
+    public int getWord(int document, int token) {
+        return corpus.getWord(first + document, token);
+    }
+
+    @Override
+    public long getNumTokens() {
+        return numTokens;
+    }
+}
@@ -0,0 +1,89 @@
+package tu.dortmund.lda.corpus;
+
+import java.util.Arrays;
+
+/**
+ * Corpus that grows at the end and shrinks at the front, such that a model can
+ * follow a stream of documents. It consists of other corpora (for example one
+ * {@link MappedCorpus} per nightly batch) and keeps for every document the
+ * corpus that holds it and its index inside that corpus. Looking up a token
+ * therefore costs two array accesses more than in the underlying corpus.
+ */
+public class StreamingCorpus implements Corpus {
+
+    private Corpus[] parts;
+    private int[] partIndices;
+    private int numDocuments;
+    private long numTokens;
+
+    public StreamingCorpus() {
+        this.parts = new Corpus[16];
+        this.partIndices = new int[16];
+        this.numDocuments = 0;
+        this.numTokens = 0;
+    }
+
+    public StreamingCorpus(Corpus documents) {
+        this();
+        append(documents);
+    }
+
+    /**
+     * Appends all documents of the given corpus. The corpus must not change
+     * afterwards.
+     */
+    public void append(Corpus documents) {
+        int numNewDocuments = documents.getNumDocuments();
+        if (numDocuments + numNewDocuments > parts.length) {
+            int capacity = Math.max(numDocuments + numNewDocuments, 2 * parts.length);
+            parts = Arrays.copyOf(parts, capacity);
+            partIndices = Arrays.copyOf(partIndices, capacity);
+        }
+        for (int document = 0; document < numNewDocuments; document++) {
+            parts[numDocuments] = documents;
+            partIndices[numDocuments] = document;
+            numDocuments++;
+        }
+        numTokens += documents.getNumTokens();
+    }
+
+    /**
+     * Removes the oldest documents. The remaining documents move to the front,
+     * so document i becomes document i - count.
+     *
+     * @param count Number of documents that are removed.
+     */
+    public void retire(int count) {
+        if (count < 0 || count > numDocuments) {
+            throw new IllegalArgumentException("Can not retire " + count + " of " + numDocuments + " documents");
+        }
+        for (int document = 0; document < count; document++) {
+            numTokens -= getDocumentLength(document);
+        }
+        numDocuments -= count;
+        System.arraycopy(parts, count, parts, 0, numDocuments);
+        System.arraycopy(partIndices, count, partIndices, 0, numDocuments);
+        // release the retired corpora
+        Arrays.fill(parts, numDocuments, numDocuments + count, null);
+    }
+
+    @Override
+    public int getNumDocuments() {
+        return numDocuments;
+    }
+
+    @Override
+    public int getDocumentLength(int document) {
+        return parts[document].getDocumentLength(partIndices[document]);
+    }
+
+    @Override
+    public int getWord(int document, int token) {
+        return parts[document].getWord(partIndices[document], token);
+    }
+
+    @Override
+    public long getNumTokens() {
+        return numTokens;
+    }
+}
@@ -0,0 +1,241 @@
+package tu.dortmund.lda.corpus;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Turns raw text files into a binary corpus that can be opened with
+ * {@link MappedCorpus}. Every line of the input files is one document. The
+ * input is streamed twice: the first pass counts the word frequencies and
+ * builds the vocabulary, the second pass encodes the documents and writes them
+ * with a {@link CorpusWriter}. The lines are read in batches that are
+ * tokenized by a thread pool, and only a bounded number of batches is in
+ * flight at any time, so the memory usage does not depend on the corpus size
+ * (apart from the vocabulary).
+ */
+public class TextCorpusBuilder {
+
+    private static final int BATCH_SIZE = 4096;
+
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    private long minWordCount = 5;
+    private int maxVocabularySize = Integer.MAX_VALUE;
+
+    public void setNumThreads(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("numThreads must be at least 1");
+        }
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * Words that occur less often in the whole corpus are removed from the
+     * vocabulary and from the documents.
+     */
+    public void setMinWordCount(long minWordCount) {
+        this.minWordCount = minWordCount;
+    }
+
+    /**
+     * Keeps at most the given number of most frequent words.
+     */
+    public void setMaxVocabularySize(int maxVocabularySize) {
+        this.maxVocabularySize = maxVocabularySize;
+    }
+
+    /**
+     * Builds the corpus. Documents that contain no word of the vocabulary are
+     * skipped.
+     *
+     * @param inputs     Text files with one document per line (UTF-8).
+     * @param corpus     Path of the binary corpus file.
+     * @param vocabulary Path of the vocabulary file. Line i contains the word
+     *                   with index i. The words are sorted in descending order by
+     *                   their frequency.
+     * @return The mapped corpus.
+     */
+    public MappedCorpus build(List<Path> inputs, Path corpus, Path vocabulary) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<String> words = buildVocabulary(inputs, executor);
+            try (BufferedWriter writer = Files.newBufferedWriter(vocabulary, StandardCharsets.UTF_8)) {
+                for (String word : words) {
+                    writer.write(word);
+                    writer.newLine();
+                }
+            }
+
+            Map<String, Integer> wordIndex = new HashMap<String, Integer>(2 * words.size());
+            for (int i = 0; i < words.size(); i++) {
+                wordIndex.put(words.get(i), i);
+            }
+            try (CorpusWriter writer = new CorpusWriter(corpus, words.size())) {
+                forEachBatch(inputs, executor, batch -> encode(batch, wordIndex), documents -> {
+                    for (int[] document : documents) {
+                        if (document.length > 0) {
+                            writer.addDocument(document);
+                        }
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return new MappedCorpus(corpus);
+    }
+
+    /**
+     * First pass. Counts how often each word occurs and keeps the frequent ones.
+     */
+    private List<String> buildVocabulary(List<Path> inputs, ExecutorService executor) throws IOException {
+        ConcurrentHashMap<String, Long> wordCounts = new ConcurrentHashMap<String, Long>();
+        forEachBatch(inputs, executor, batch -> {
+            // count locally first, such that every word of the batch touches the shared map only once
+            HashMap<String, Long> batchCounts = new HashMap<String, Long>();
+            List<String> tokens = new ArrayList<String>();
+            for (String line : batch) {
+                tokens.clear();
+                tokenize(line, tokens);
+                for (String token : tokens) {
+                    batchCounts.merge(token, 1L, Long::sum);
+                }
+            }
+            batchCounts.forEach((word, count) -> wordCounts.merge(word, count, Long::sum));
+            return null;
+        }, result -> {
+        });
+
+        List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>();
+        for (Map.Entry<String, Long> entry : wordCounts.entrySet()) {
+            if (entry.getValue() >= minWordCount) {
+                entries.add(entry);
+            }
+        }
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+
+        List<String> words = new ArrayList<String>(Math.min(entries.size(), maxVocabularySize));
+        for (int i = 0; i < entries.size() && i < maxVocabularySize; i++) {
+            words.add(entries.get(i).getKey());
+        }
+        return words;
+    }
+
+    /**
+     * Second pass. Replaces every word by its index and drops unknown words.
+     */
+    private List<int[]> encode(List<String> batch, Map<String, Integer> wordIndex) {
+        List<int[]> documents = new ArrayList<int[]>(batch.size());
+        List<String> tokens = new ArrayList<String>();
+        int[] buffer = new int[16];
+        for (String line : batch) {
+            tokens.clear();
+            tokenize(line, tokens);
+            if (buffer.length < tokens.size()) {
+                buffer = new int[tokens.size()];
+            }
+            int length = 0;
+            for (String token : tokens) {
+                Integer word = wordIndex.get(token);
+                if (word != null) {
+                    buffer[length++] = word;
+                }
+            }
+            documents.add(Arrays.copyOf(buffer, length));
+        }
+        return documents;
+    }
+
+    /**
+     * Splits a line into lower case words. A word is a maximal sequence of
+     * letters and digits that contains at least one letter. Override this method
+     * to use a different tokenizer.
+     *
+     * @param line   The text of a document.
+     * @param tokens The words are appended to this list.
+     */
+    protected void tokenize(String line, List<String> tokens) {
+        int start = -1;
+        boolean hasLetter = false;
+        for (int i = 0; i <= line.length(); i++) {
+            char c = i < line.length() ? line.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (start < 0) {
+                    start = i;
+                    hasLetter = false;
+                }
+                hasLetter |= Character.isLetter(c);
+            } else if (start >= 0) {
+                if (hasLetter) {
+                    tokens.add(line.substring(start, i).toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+    }
+
+    private interface BatchConsumer<T> {
+        void accept(T result) throws IOException;
+    }
+
+    /**
+     * Reads the lines of all inputs in batches and processes the batches in
+     * parallel. The results are consumed in the order of the input, and at most
+     * 2 * numThreads batches are in flight.
+     */
+    private <T> void forEachBatch(List<Path> inputs, ExecutorService executor, Function<List<String>, T> task,
+            BatchConsumer<T> consumer) throws IOException {
+        ArrayDeque<Future<T>> pending = new ArrayDeque<Future<T>>();
+        List<String> batch = new ArrayList<String>(BATCH_SIZE);
+        for (Path input : inputs) {
+            try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    batch.add(line);
+                    if (batch.size() == BATCH_SIZE) {
+                        List<String> full = batch;
+                        pending.add(executor.submit(() -> task.apply(full)));
+                        batch = new ArrayList<String>(BATCH_SIZE);
+                        if (pending.size() >= 2 * numThreads) {
+                            consumer.accept(await(pending.poll()));
+                        }
+                    }
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            List<String> last = batch;
+            pending.add(executor.submit(() -> task.apply(last)));
+        }
+        while (!pending.isEmpty()) {
+            consumer.accept(await(pending.poll()));
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Processing a batch of documents failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while processing documents", e);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package tu.dortmund.lda.data_structure;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Topic word matrix that stores the counts of every word in the narrowest
+ * array that can hold them. A row starts with 8 bit counts and is promoted to
+ * 16 and then 32 bits when a count leaves the range of its type. Most words
+ * are rare, so most rows stay at one or two bytes per topic and the matrix
+ * needs a fraction of the memory of {@link WordMajorTopicWordMatrix}.
+ *
+ * A promotion copies the counts into the wider row and then publishes it with
+ * a release store, which the readers pair with an acquire load. Concurrent
+ * readers therefore see either the old row or the new row with all copied
+ * counts.
+ * {@link #getAndAdd(int, int, int)} locks one of a few stripes of words and is
+ * therefore much slower than the atomic update of WordMajorTopicWordMatrix.
+ */
+public class AdaptiveTopicWordMatrix implements TopicWordMatrix {
+
+    private static final int NUM_LOCKS = 64;
+
+    private static final VarHandle ROWS = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    private final int numTopics;
+    private final int vocabularySize;
+
+    /**
+     * The row of every word, a byte[], short[] or int[] of length numTopics.
+     */
+    private final Object[] rows;
+
+    private final Object[] locks;
+
+    public AdaptiveTopicWordMatrix(int numTopics, int vocabularySize) {
+        this.numTopics = numTopics;
+        this.vocabularySize = vocabularySize;
+        this.rows = new Object[vocabularySize];
+        for (int word = 0; word < vocabularySize; word++) {
+            rows[word] = new byte[numTopics];
+        }
+        this.locks = new Object[NUM_LOCKS];
+        for (int i = 0; i < NUM_LOCKS; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    private AdaptiveTopicWordMatrix(AdaptiveTopicWordMatrix other) {
+        this.numTopics = other.numTopics;
+        this.vocabularySize = other.vocabularySize;
+        this.rows = new Object[vocabularySize];
+        this.locks = new Object[NUM_LOCKS];
+        for (int i = 0; i < NUM_LOCKS; i++) {
+            locks[i] = new Object();
+        }
+        for (int word = 0; word < vocabularySize; word++) {
+            Object row = other.rows[word];
+            if (row instanceof byte[]) {
+                rows[word] = ((byte[]) row).clone();
+            } else if (row instanceof short[]) {
+                rows[word] = ((short[]) row).clone();
+            } else {
+                rows[word] = ((int[]) row).clone();
+            }
+        }
+    }
+
+    private Object getRow(int word) {
+        return ROWS.getAcquire(rows, word);
+    }
+
+    @Override
+    public int get(int topic, int word) {
+        Object row = getRow(word);
+        if (row instanceof byte[]) {
+            return ((byte[]) row)[topic];
+        }
+        if (row instanceof short[]) {
+            return ((short[]) row)[topic];
+        }
+        return ((int[]) row)[topic];
+    }
+
+    @Override
+    public void set(int topic, int word, int count) {
+        Object row = getRow(word);
+        if (row instanceof byte[]) {
+            if (count == (byte) count) {
+                ((byte[]) row)[topic] = (byte) count;
+                return;
+            }
+            row = promote(word);
+        }
+        if (row instanceof short[]) {
+            if (count == (short) count) {
+                ((short[]) row)[topic] = (short) count;
+                return;
+            }
+            row = promote(word);
+        }
+        ((int[]) row)[topic] = count;
+    }
+
+    @Override
+    public void increment(int topic, int word) {
+        add(topic, word, 1);
+    }
+
+    @Override
+    public void decrement(int topic, int word) {
+        add(topic, word, -1);
+    }
+
+    @Override
+    public void add(int topic, int word, int delta) {
+        set(topic, word, get(topic, word) + delta);
+    }
+
+    @Override
+    public int getAndAdd(int topic, int word, int delta) {
+        synchronized (locks[word & (NUM_LOCKS - 1)]) {
+            int count = get(topic, word);
+            set(topic, word, count + delta);
+            return count;
+        }
+    }
+
+    /**
+     * Moves the counts of a word into the next wider row type.
+     *
+     * @return The new row.
+     */
+    private Object promote(int word) {
+        Object row = getRow(word);
+        Object widerRow;
+        if (row instanceof byte[]) {
+            byte[] byteRow = (byte[]) row;
+            short[] shortRow = new short[numTopics];
+            for (int topic = 0; topic < numTopics; topic++) {
+                shortRow[topic] = byteRow[topic];
+            }
+            widerRow = shortRow;
+        } else {
+            short[] shortRow = (short[]) row;
+            int[] intRow = new int[numTopics];
+            for (int topic = 0; topic < numTopics; topic++) {
+                intRow[topic] = shortRow[topic];
+            }
+            widerRow = intRow;
+        }
+        ROWS.setRelease(rows, word, widerRow);
+        return widerRow;
+    }
+
+    /**
+     * Sets all counts to zero and shrinks all rows back to 8 bits.
+     */
+    @Override
+    public void clear() {
+        for (int word = 0; word < vocabularySize; word++) {
+            rows[word] = new byte[numTopics];
+        }
+    }
+
+    @Override
+    public TopicWordMatrix copy() {
+        return new AdaptiveTopicWordMatrix(this);
+    }
+
+    /**
+     * @return The number of bytes of the counts, without the array headers.
+     */
+    public long getMemoryUsage() {
+        long bytes = 0;
+        for (int word = 0; word < vocabularySize; word++) {
+            Object row = rows[word];
+            bytes += row instanceof byte[] ? numTopics : row instanceof short[] ? 2L * numTopics : 4L * numTopics;
+        }
+        return bytes;
+    }
+
+    @Override
+    public int getNumTopics() {
+        return numTopics;
+    }
+
+    @Override
+    public int getVocabularySize() {
+        return vocabularySize;
+    }
+}
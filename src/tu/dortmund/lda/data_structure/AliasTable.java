@@ -2,7 +2,9 @@ package tu.dortmund.lda.data_structure;
 
 import java.util.*;
 
-public class AliasTable {
+import tu.dortmund.lda.kernel.Kernels;
+
+public class AliasTable implements ProposalTable {
     private double[] probabilityForIndex;
     private int[] alternativeForIndex;
     private double[] unnormalizedProbability;
@@ -20,20 +22,31 @@ public class AliasTable {
     }
 
     public void construct() {
-        double bucketSize = unnormalizedProbability.length / probabilitySum;
+        construct(Kernels.getDefault());
+    }
+
+    public void construct(Kernels kernels) {
+        construct(unnormalizedProbability, size, probabilitySum, probabilityForIndex, alternativeForIndex, kernels);
+    }
+
+    /**
+     * Fills the buckets of an alias table over the first size outcomes of
+     * unnormalizedProbability.
+     */
+    static void construct(double[] unnormalizedProbability, int size, double probabilitySum,
+            double[] probabilityForIndex, int[] alternativeForIndex, Kernels kernels) {
+        double bucketSize = size / probabilitySum;
 
         // construct p such that p[i] < 1.0 if outcome i fits into an empty bucket
         double [] p = new double[size];
-        for (int i = 0; i < unnormalizedProbability.length; i++) {
-            p[i] = unnormalizedProbability[i] * bucketSize;
-        }
+        kernels.scale(unnormalizedProbability, bucketSize, p, size);
 
         // safe smaller/bigger indexes in a single int array to avoid costly stacks or lists
         // smaller from left to right and bigger from right to left
         int[] tmpIndices = new int[size];
         int smallerCurrentIndex = -1;
         int biggerCurrentIndex = size;
-        for (int i = 0; i < unnormalizedProbability.length; i++) {
+        for (int i = 0; i < size; i++) {
             if(p[i] < 1.0){
                 tmpIndices[++smallerCurrentIndex] = i;
             } else {
@@ -65,9 +78,17 @@ public class AliasTable {
         }
     }
 
+    @Override
     public int sample(SplittableRandom random){
         sampleCount++;
+        return sampleShared(random);
+    }
 
+    /**
+     * Like {@link #sample(SplittableRandom)}, but does not increase the sample
+     * count. Several threads can therefore sample from the same table.
+     */
+    public int sampleShared(SplittableRandom random){
         int randomBucket = random.nextInt(this.size);
         if(probabilityForIndex[randomBucket] > random.nextDouble()){
             return randomBucket;
@@ -76,10 +97,12 @@ public class AliasTable {
         }
     }
 
+    @Override
     public void resetSampleCount() {
         this.sampleCount = 0;
     }
 
+    @Override
     public int getSampleCount() {
         return this.sampleCount;
     }
@@ -95,6 +118,12 @@ public class AliasTable {
         this.unnormalizedProbability = unnormalizedProbability;
     }
 
+    @Override
+    public double getProbability(int topic) {
+        return this.unnormalizedProbability[topic];
+    }
+
+    @Override
     public double getProbabilitySum() {
         return this.probabilitySum;
     }
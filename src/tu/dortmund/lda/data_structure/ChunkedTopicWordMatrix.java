@@ -0,0 +1,125 @@
+package tu.dortmund.lda.data_structure;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Topic word matrix in word major order like {@link WordMajorTopicWordMatrix},
+ * but split into several int arrays, each one holding the rows of a power of
+ * two number of words. It holds matrices with more than Integer.MAX_VALUE
+ * counts, which do not fit into a single array. The extra indirection makes it
+ * a little slower, so {@link WordMajorTopicWordMatrix#create(int, int)} only
+ * picks it when it is needed.
+ */
+public class ChunkedTopicWordMatrix implements ContiguousTopicWordMatrix {
+
+    private static final VarHandle INT_ARRAY = MethodHandles.arrayElementVarHandle(int[].class);
+
+    /**
+     * Maximum number of counts per chunk, 512 MB.
+     */
+    static final int MAX_CHUNK_SIZE = 1 << 27;
+
+    private final int numTopics;
+    private final int vocabularySize;
+    private final int wordShift;
+    private final int wordMask;
+    private final int[][] chunks;
+
+    public ChunkedTopicWordMatrix(int numTopics, int vocabularySize) {
+        this(numTopics, vocabularySize, MAX_CHUNK_SIZE);
+    }
+
+    /**
+     * @param maxChunkSize Maximum number of counts per chunk, at least
+     *                     numTopics.
+     */
+    ChunkedTopicWordMatrix(int numTopics, int vocabularySize, int maxChunkSize) {
+        if (numTopics > maxChunkSize) {
+            throw new IllegalArgumentException("A row of " + numTopics + " topics does not fit into a chunk");
+        }
+        this.numTopics = numTopics;
+        this.vocabularySize = vocabularySize;
+        this.wordShift = 31 - Integer.numberOfLeadingZeros(maxChunkSize / Math.max(1, numTopics));
+        this.wordMask = (1 << wordShift) - 1;
+        int wordsPerChunk = 1 << wordShift;
+        this.chunks = new int[(vocabularySize + wordsPerChunk - 1) >>> wordShift][];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new int[Math.min(wordsPerChunk, vocabularySize - i * wordsPerChunk) * numTopics];
+        }
+    }
+
+    private ChunkedTopicWordMatrix(ChunkedTopicWordMatrix other) {
+        this.numTopics = other.numTopics;
+        this.vocabularySize = other.vocabularySize;
+        this.wordShift = other.wordShift;
+        this.wordMask = other.wordMask;
+        this.chunks = new int[other.chunks.length][];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = other.chunks[i].clone();
+        }
+    }
+
+    @Override
+    public int[] getRowArray(int word) {
+        return chunks[word >>> wordShift];
+    }
+
+    @Override
+    public int getRowOffset(int word) {
+        return (word & wordMask) * numTopics;
+    }
+
+    @Override
+    public int get(int topic, int word) {
+        return chunks[word >>> wordShift][(word & wordMask) * numTopics + topic];
+    }
+
+    @Override
+    public void set(int topic, int word, int count) {
+        chunks[word >>> wordShift][(word & wordMask) * numTopics + topic] = count;
+    }
+
+    @Override
+    public void increment(int topic, int word) {
+        chunks[word >>> wordShift][(word & wordMask) * numTopics + topic]++;
+    }
+
+    @Override
+    public void decrement(int topic, int word) {
+        chunks[word >>> wordShift][(word & wordMask) * numTopics + topic]--;
+    }
+
+    @Override
+    public void add(int topic, int word, int delta) {
+        chunks[word >>> wordShift][(word & wordMask) * numTopics + topic] += delta;
+    }
+
+    @Override
+    public int getAndAdd(int topic, int word, int delta) {
+        return (int) INT_ARRAY.getAndAdd(chunks[word >>> wordShift], (word & wordMask) * numTopics + topic, delta);
+    }
+
+    @Override
+    public void clear() {
+        for (int[] chunk : chunks) {
+            Arrays.fill(chunk, 0);
+        }
+    }
+
+    @Override
+    public TopicWordMatrix copy() {
+        return new ChunkedTopicWordMatrix(this);
+    }
+
+    @Override
+    public int getNumTopics() {
+        return numTopics;
+    }
+
+    @Override
+    public int getVocabularySize() {
+        return vocabularySize;
+    }
+}
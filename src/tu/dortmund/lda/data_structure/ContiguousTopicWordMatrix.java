@@ -0,0 +1,19 @@
+package tu.dortmund.lda.data_structure;
+
+/**
+ * Topic word matrix that stores the counts of all topics of a word next to
+ * each other in an int array, such that loops over the topics of a word can
+ * run directly on the array.
+ */
+public interface ContiguousTopicWordMatrix extends TopicWordMatrix {
+
+    /**
+     * @return The array that holds the counts of the word.
+     */
+    public int[] getRowArray(int word);
+
+    /**
+     * @return Index of the count of topic 0 of the word in its row array.
+     */
+    public int getRowOffset(int word);
+}
@@ -0,0 +1,97 @@
+package tu.dortmund.lda.data_structure;
+
+/**
+ * Dense working copy of the topic counts of a single document. Samplers that
+ * visit the corpus document by document load the current document into the
+ * buffer, update only the buffer while they sample its tokens, and store the
+ * counts back into the {@link SparseDocTopicMatrix} when the document is done.
+ * Besides the dense counts the buffer maintains the list of nonzero topics,
+ * such that they can be iterated in O(Td). All operations are O(1).
+ */
+public class DocTopicBuffer {
+
+    private final int[] counts;
+    private final int[] nonzeroTopics;
+
+    /**
+     * Position of every topic in nonzeroTopics. Only valid for topics with a
+     * nonzero count.
+     */
+    private final int[] positions;
+    private int numNonzero;
+
+    public DocTopicBuffer(int numTopics) {
+        this.counts = new int[numTopics];
+        this.nonzeroTopics = new int[numTopics];
+        this.positions = new int[numTopics];
+        this.numNonzero = 0;
+    }
+
+    /**
+     * Loads the counts of a document. The buffer needs to be empty.
+     */
+    public void load(SparseDocTopicMatrix matrix, int document) {
+        for (int slot = 0; slot < matrix.getNumSlots(document); slot++) {
+            int count = matrix.getCount(document, slot);
+            if (count > 0) {
+                int topic = matrix.getTopic(document, slot);
+                counts[topic] = count;
+                positions[topic] = numNonzero;
+                nonzeroTopics[numNonzero++] = topic;
+            }
+        }
+    }
+
+    /**
+     * Replaces the counts of a document in the matrix with the counts of this
+     * buffer and empties the buffer.
+     */
+    public void store(SparseDocTopicMatrix matrix, int document) {
+        matrix.clear(document);
+        for (int i = 0; i < numNonzero; i++) {
+            int topic = nonzeroTopics[i];
+            matrix.add(document, topic, counts[topic]);
+            counts[topic] = 0;
+        }
+        numNonzero = 0;
+    }
+
+    public int get(int topic) {
+        return counts[topic];
+    }
+
+    public void increment(int topic) {
+        if (counts[topic]++ == 0) {
+            positions[topic] = numNonzero;
+            nonzeroTopics[numNonzero++] = topic;
+        }
+    }
+
+    public void decrement(int topic) {
+        if (--counts[topic] == 0) {
+            // move the last nonzero topic into the gap
+            int last = nonzeroTopics[--numNonzero];
+            nonzeroTopics[positions[topic]] = last;
+            positions[last] = positions[topic];
+        }
+    }
+
+    /**
+     * @return The dense counts, which must not be modified.
+     */
+    public int[] getCounts() {
+        return counts;
+    }
+
+    public int getNumNonzero() {
+        return numNonzero;
+    }
+
+    /**
+     * @param index Index between 0 and getNumNonzero() - 1.
+     * @return The topic with the given index in the list of nonzero topics.
+     */
+    public int getNonzeroTopic(int index) {
+        return nonzeroTopics[index];
+    }
+}
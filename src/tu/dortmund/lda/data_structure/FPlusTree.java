@@ -2,6 +2,8 @@ package tu.dortmund.lda.data_structure;
 
 import java.util.SplittableRandom;
 
+import tu.dortmund.lda.kernel.Kernels;
+
 public class FPlusTree {
 
     private int size;
@@ -13,17 +15,22 @@ public class FPlusTree {
     }
 
     public void build(double[] weights) {
+        build(weights, Kernels.getDefault());
+    }
+
+    public void build(double[] weights, Kernels kernels) {
         if (weights.length != this.size) {
             System.err.println("Provided weights array does not match the tree size");
         }
 
         // init leafs
-        for (int i = 2 * size - 1; i >= size; i--) {
-            treeNodes[i] = weights[i - size];
-        }
-        // init inner nodes
-        for (int i = size - 1; i > 0; i--) {
-            treeNodes[i] = treeNodes[2 * i] + treeNodes[2 * i + 1];
+        System.arraycopy(weights, 0, treeNodes, size, size);
+        // init inner nodes, the nodes [first, last) only depend on nodes >= last
+        int last = size;
+        while (last > 1) {
+            int first = (last + 1) / 2;
+            kernels.sumChildren(treeNodes, first, last - first);
+            last = first;
         }
     }
 
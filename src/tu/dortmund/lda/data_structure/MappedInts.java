@@ -0,0 +1,102 @@
+package tu.dortmund.lda.data_structure;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Array of ints in a memory mapped file. The operating system loads the pages
+ * on access and writes changed pages back, so only the pages in use occupy
+ * main memory. Since a single mapping is limited to 2 GB, the file is mapped
+ * in chunks of 1 GB. The ints are stored in native byte order, which allows
+ * atomic updates.
+ */
+class MappedInts {
+
+    private static final int CHUNK_BYTES_BITS = 30;
+    private static final int INT_CHUNK_BITS = CHUNK_BYTES_BITS - 2;
+    private static final int INT_CHUNK_MASK = (1 << INT_CHUNK_BITS) - 1;
+
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer[] chunks;
+
+    /**
+     * Creates the file, or truncates an existing one, and maps it. All ints are
+     * zero.
+     */
+    MappedInts(Path path, long size) throws IOException {
+        long chunkSize = 1L << CHUNK_BYTES_BITS;
+        long bytes = 4 * size;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            chunks = new ByteBuffer[(int) Math.max(1, (bytes + chunkSize - 1) / chunkSize)];
+            for (int i = 0; i < chunks.length; i++) {
+                long position = i * chunkSize;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.min(chunkSize, bytes - position))
+                        .order(ByteOrder.nativeOrder());
+            }
+        }
+    }
+
+    int get(long index) {
+        return (int) INTS.get(chunks[(int) (index >>> INT_CHUNK_BITS)], (int) (index & INT_CHUNK_MASK) << 2);
+    }
+
+    void set(long index, int value) {
+        INTS.set(chunks[(int) (index >>> INT_CHUNK_BITS)], (int) (index & INT_CHUNK_MASK) << 2, value);
+    }
+
+    void add(long index, int delta) {
+        ByteBuffer chunk = chunks[(int) (index >>> INT_CHUNK_BITS)];
+        int offset = (int) (index & INT_CHUNK_MASK) << 2;
+        INTS.set(chunk, offset, (int) INTS.get(chunk, offset) + delta);
+    }
+
+    int getAndAdd(long index, int delta) {
+        return (int) INTS.getAndAdd(chunks[(int) (index >>> INT_CHUNK_BITS)], (int) (index & INT_CHUNK_MASK) << 2,
+                delta);
+    }
+
+    /**
+     * Copies length ints starting at index into the array.
+     */
+    void read(long index, int[] values, int length) {
+        for (int i = 0; i < length; i++) {
+            values[i] = get(index + i);
+        }
+    }
+
+    /**
+     * Copies the first length ints of the array to the ints starting at index.
+     */
+    void write(long index, int[] values, int length) {
+        for (int i = 0; i < length; i++) {
+            set(index + i, values[i]);
+        }
+    }
+
+    /**
+     * Copies all ints of another array of the same size.
+     */
+    void copyFrom(MappedInts other) {
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i].duplicate().put(other.chunks[i].duplicate());
+        }
+    }
+
+    void clear() {
+        byte[] zeros = new byte[1 << 16];
+        for (ByteBuffer chunk : chunks) {
+            ByteBuffer buffer = chunk.duplicate();
+            while (buffer.hasRemaining()) {
+                buffer.put(zeros, 0, Math.min(zeros.length, buffer.remaining()));
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package tu.dortmund.lda.data_structure;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import tu.dortmund.lda.corpus.Corpus;
+
+/**
+ * The topic assignments of all tokens of a corpus in a memory mapped file, in
+ * the compressed sparse row (CSR) layout of the corpus. Only the offset of
+ * every document is kept on the heap. The samplers read the assignments of a
+ * block of documents into arrays, sample them and write them back.
+ */
+public class MappedTopicAssignments {
+
+    private final MappedInts topics;
+    private final long[] offsets;
+
+    /**
+     * Creates the file, or truncates an existing one. All tokens are assigned
+     * to topic 0.
+     */
+    public MappedTopicAssignments(Path path, Corpus documents) throws IOException {
+        offsets = new long[documents.getNumDocuments() + 1];
+        for (int document = 0; document < documents.getNumDocuments(); document++) {
+            offsets[document + 1] = offsets[document] + documents.getDocumentLength(document);
+        }
+        topics = new MappedInts(path, offsets[documents.getNumDocuments()]);
+    }
+
+    public int getNumDocuments() {
+        return offsets.length - 1;
+    }
+
+    public int getDocumentLength(int document) {
+        return (int) (offsets[document + 1] - offsets[document]);
+    }
+
+    /**
+     * @return The topic assignments of the document in a new array.
+     */
+    public int[] read(int document) {
+        int[] documentTopics = new int[getDocumentLength(document)];
+        topics.read(offsets[document], documentTopics, documentTopics.length);
+        return documentTopics;
+    }
+
+    public void write(int document, int[] documentTopics) {
+        topics.write(offsets[document], documentTopics, getDocumentLength(document));
+    }
+}
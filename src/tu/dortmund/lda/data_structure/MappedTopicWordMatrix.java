@@ -0,0 +1,98 @@
+package tu.dortmund.lda.data_structure;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Topic word matrix in a memory mapped file, in word major order like
+ * {@link WordMajorTopicWordMatrix}. The matrix can be much larger than the
+ * heap, only the rows of the recently sampled words need to be in main memory.
+ * A copy is mapped from a temporary file in the same directory, which is
+ * deleted right away and lives as long as its mapping.
+ */
+public class MappedTopicWordMatrix implements TopicWordMatrix {
+
+    private final Path directory;
+    private final int numTopics;
+    private final int vocabularySize;
+    private final MappedInts counts;
+
+    /**
+     * Creates the file, or truncates an existing one. All counts are zero.
+     */
+    public MappedTopicWordMatrix(Path path, int numTopics, int vocabularySize) throws IOException {
+        this.directory = path.toAbsolutePath().getParent();
+        this.numTopics = numTopics;
+        this.vocabularySize = vocabularySize;
+        this.counts = new MappedInts(path, (long) numTopics * vocabularySize);
+    }
+
+    private static long index(int numTopics, int topic, int word) {
+        return (long) word * numTopics + topic;
+    }
+
+    @Override
+    public int get(int topic, int word) {
+        return counts.get(index(numTopics, topic, word));
+    }
+
+    @Override
+    public void set(int topic, int word, int count) {
+        counts.set(index(numTopics, topic, word), count);
+    }
+
+    @Override
+    public void increment(int topic, int word) {
+        counts.add(index(numTopics, topic, word), 1);
+    }
+
+    @Override
+    public void decrement(int topic, int word) {
+        counts.add(index(numTopics, topic, word), -1);
+    }
+
+    @Override
+    public void add(int topic, int word, int delta) {
+        counts.add(index(numTopics, topic, word), delta);
+    }
+
+    @Override
+    public int getAndAdd(int topic, int word, int delta) {
+        return counts.getAndAdd(index(numTopics, topic, word), delta);
+    }
+
+    @Override
+    public void clear() {
+        counts.clear();
+    }
+
+    @Override
+    public TopicWordMatrix copy() {
+        try {
+            Path path = Files.createTempFile(directory, "topic-word", ".bin");
+            MappedTopicWordMatrix copy = new MappedTopicWordMatrix(path, numTopics, vocabularySize);
+            try {
+                Files.delete(path);
+            } catch (IOException e) {
+                // some platforms can not delete a mapped file
+                path.toFile().deleteOnExit();
+            }
+            copy.counts.copyFrom(counts);
+            return copy;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not copy the topic word matrix", e);
+        }
+    }
+
+    @Override
+    public int getNumTopics() {
+        return numTopics;
+    }
+
+    @Override
+    public int getVocabularySize() {
+        return vocabularySize;
+    }
+}
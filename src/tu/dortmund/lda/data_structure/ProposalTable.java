@@ -0,0 +1,29 @@
+package tu.dortmund.lda.data_structure;
+
+import java.util.SplittableRandom;
+
+/**
+ * Table that draws the word proposal of the Metropolis Hastings samplers. The
+ * samplers count the draws from a table and rebuild it once it is outdated.
+ */
+public interface ProposalTable {
+
+    /**
+     * Draws a topic and increases the sample count.
+     */
+    public int sample(SplittableRandom random);
+
+    public int getSampleCount();
+
+    public void resetSampleCount();
+
+    /**
+     * @return The unnormalized probability of the topic.
+     */
+    public double getProbability(int topic);
+
+    /**
+     * @return The sum of the unnormalized probabilities of all topics.
+     */
+    public double getProbabilitySum();
+}
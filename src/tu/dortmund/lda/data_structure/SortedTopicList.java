@@ -1,16 +1,40 @@
 package tu.dortmund.lda.data_structure;
 
-import java.util.ArrayList;
-import java.util.Collections;
-
+import java.util.Arrays;
+
+/**
+ * List of the topics that have a nonzero count for a word, sorted in
+ * descending order by their count. Topic and count are packed into a single
+ * int, such that two entries can be compared with one comparison. A small open
+ * addressing hash table maps every topic to its position in the list, therefore
+ * finding a topic takes O(1) expected time and a count change only swaps the
+ * entry with its neighbours until the order is restored. As long as the list
+ * does not exceed its capacity, no memory is allocated after construction.
+ */
 public class SortedTopicList {
     private int numTopics;
     private int topicMaskSize;
     private int topicMask;
 
-    ArrayList<Integer> encodingList;
+    private int[] encodings;
+    private int size;
+
+    /**
+     * Maps a topic to its index in encodings. Slot i holds topic + 1 at
+     * index[2 * i] and the position at index[2 * i + 1]. A slot is empty if its
+     * key is zero.
+     */
+    private int[] index;
 
     public SortedTopicList(int numTopics) {
+        this(numTopics, 4);
+    }
+
+    /**
+     * @param capacity Expected maximum number of nonzero topics, for example the
+     *                 minimum of the number of topics and the word frequency.
+     */
+    public SortedTopicList(int numTopics, int capacity) {
         this.numTopics = numTopics;
 
         // find smallest topicMaskSize such that 2^topicMaskSize >= kTopics
@@ -20,94 +44,182 @@ public class SortedTopicList {
         }
         topicMask = (int) (Math.pow(2, topicMaskSize) - 1);
 
-        this.encodingList = new ArrayList<Integer>();
+        this.encodings = new int[Math.max(1, capacity)];
+        this.size = 0;
+        this.index = new int[2 * indexSlots(encodings.length)];
     }
 
+    public SortedTopicList(SortedTopicList other) {
+        this.numTopics = other.numTopics;
+        this.topicMaskSize = other.topicMaskSize;
+        this.topicMask = other.topicMask;
+        this.encodings = other.encodings.clone();
+        this.size = other.size;
+        this.index = other.index.clone();
+    }
+
+    /**
+     * Appends a topic that is not in the list yet. Call {@link #sort()} after
+     * all topics were added.
+     */
     public void addTopic(int topic, int count) {
-        encodingList.add(createEncoding(topic, count));
+        if (size == encodings.length) {
+            grow();
+        }
+        encodings[size] = createEncoding(topic, count);
+        insertIndex(topic, size);
+        size++;
     }
 
     public void sort() {
-        Collections.sort(encodingList, Collections.reverseOrder());
+        Arrays.sort(encodings, 0, size);
+        // reverse to get a descending order
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            int tmp = encodings[i];
+            encodings[i] = encodings[j];
+            encodings[j] = tmp;
+        }
+        for (int i = 0; i < size; i++) {
+            index[2 * findSlot(recoverTopic(encodings[i])) + 1] = i;
+        }
     }
 
     public int getTopic(int index){
-        return recoverTopic(encodingList.get(index));
+        return recoverTopic(encodings[index]);
     }
 
     public int getCount(int index){
-        return recoverWordCount(encodingList.get(index));
+        return recoverWordCount(encodings[index]);
     }
 
     public int size(){
-        return encodingList.size();
+        return size;
     }
 
     public void decrementTopicCount(int topic) {
-        // find old topic in the array. Sadly, we need to do this iteratively
-        int oldTopicIndex = -1;
-        for (int i = 0; i < encodingList.size(); i++) {
-            if(recoverTopic(encodingList.get(i)) == topic){
-                oldTopicIndex = i;
-                break;
-            }
+        int slot = findSlot(topic);
+        if(index[2 * slot] == 0){
+            return;
         }
 
-        if(oldTopicIndex != -1){
-            // decrement the value of the old topic by 1
-            int newWordCount = recoverWordCount(encodingList.get(oldTopicIndex)) - 1;
-            if(newWordCount == 0){
-                encodingList.remove(oldTopicIndex);
-            }
-            else {
-                encodingList.set(oldTopicIndex, createEncoding(topic, newWordCount));
-                // make sure that array is still sorted in descending order
-                for (int i = oldTopicIndex; i < encodingList.size() - 1; i++) {
-                    if(encodingList.get(i) < encodingList.get(i + 1)){
-                        int tmp = encodingList.get(i);
-                        encodingList.set(i, encodingList.get(i + 1));
-                        encodingList.set(i + 1, tmp);
-                    }
-                    else{
-                        break;
-                    }
-                }
-            }
+        // decrement the value of the topic by 1 and move it towards the end while the list is unsorted
+        int position = index[2 * slot + 1];
+        int encoding = encodings[position] - (1 << topicMaskSize);
+        while (position < size - 1 && encodings[position + 1] > encoding) {
+            move(position + 1, position);
+            position++;
+        }
+        encodings[position] = encoding;
+        index[2 * slot + 1] = position;
+
+        // an entry with a zero count is always the last one
+        if(recoverWordCount(encoding) == 0){
+            size--;
+            removeIndex(slot);
         }
     }
 
     public void incrementTopicCount(int topic){
-        // find new topic in the array. Sadly, we need to do this iteratively
-        int newTopicIndex = -1;
-        for (int i = 0; i < encodingList.size(); i++) {
-            if(recoverTopic(encodingList.get(i)) == topic){
-                newTopicIndex = i;
-                break;
+        int slot = findSlot(topic);
+
+        // if the topic is not in the list yet we need to append it
+        if(index[2 * slot] == 0) {
+            if (size == encodings.length) {
+                grow();
+                slot = findSlot(topic);
             }
+            encodings[size] = createEncoding(topic, 0);
+            index[2 * slot] = topic + 1;
+            index[2 * slot + 1] = size;
+            size++;
         }
 
-        // if new topic is not in the list yet we need to create it
-        if(newTopicIndex == -1) {
-            encodingList.add(createEncoding(topic, 1));
-            newTopicIndex = encodingList.size()-1;
+        // increment the value of the topic by 1 and move it towards the front while the list is unsorted
+        int position = index[2 * slot + 1];
+        int encoding = encodings[position] + (1 << topicMaskSize);
+        while (position > 0 && encodings[position - 1] < encoding) {
+            move(position - 1, position);
+            position--;
         }
-        else {
-            int newWordCount = recoverWordCount(encodingList.get(newTopicIndex)) + 1;
-            encodingList.set(newTopicIndex, createEncoding(topic, newWordCount));
+        encodings[position] = encoding;
+        index[2 * slot + 1] = position;
+    }
+
+    /**
+     * Moves the entry at position from to position to and updates its index.
+     */
+    private void move(int from, int to) {
+        int encoding = encodings[from];
+        encodings[to] = encoding;
+        index[2 * findSlot(recoverTopic(encoding)) + 1] = to;
+    }
+
+    /**
+     * @return The slot of the topic in the index or the empty slot where it would
+     *         be inserted.
+     */
+    private int findSlot(int topic) {
+        int mask = (index.length >> 1) - 1;
+        int slot = hash(topic, mask);
+        while (index[2 * slot] != 0 && index[2 * slot] != topic + 1) {
+            slot = (slot + 1) & mask;
         }
-        // make sure that the array is still sorted in descending order
-        for (int i = newTopicIndex; i > 0; i--) {
-            if(encodingList.get(i) > encodingList.get(i-1)){
-                int tmp = encodingList.get(i-1);
-                encodingList.set(i-1, encodingList.get(i));
-                encodingList.set(i, tmp);
-            }
-            else{
+        return slot;
+    }
+
+    private void insertIndex(int topic, int position) {
+        int slot = findSlot(topic);
+        index[2 * slot] = topic + 1;
+        index[2 * slot + 1] = position;
+    }
+
+    /**
+     * Empties the given slot and shifts the following entries back, such that no
+     * probe sequence gets interrupted.
+     */
+    private void removeIndex(int slot) {
+        int mask = (index.length >> 1) - 1;
+        int empty = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            int key = index[2 * next];
+            if (key == 0) {
                 break;
             }
+            int home = hash(key - 1, mask);
+            // move the entry if its home slot is not between empty and next (cyclic)
+            if (((next - home) & mask) >= ((next - empty) & mask)) {
+                index[2 * empty] = key;
+                index[2 * empty + 1] = index[2 * next + 1];
+                empty = next;
+            }
+        }
+        index[2 * empty] = 0;
+        index[2 * empty + 1] = 0;
+    }
+
+    private void grow() {
+        encodings = Arrays.copyOf(encodings, 2 * encodings.length);
+        index = new int[2 * indexSlots(encodings.length)];
+        for (int i = 0; i < size; i++) {
+            insertIndex(recoverTopic(encodings[i]), i);
         }
     }
 
+    /**
+     * @return Number of index slots for the given capacity. The load factor of
+     *         the index stays at most 1/2.
+     */
+    private static int indexSlots(int capacity) {
+        return Integer.highestOneBit(2 * capacity - 1) << 1;
+    }
+
+    private static int hash(int topic, int mask) {
+        // Fibonacci hashing, the high bits of the product are the best mixed ones
+        return ((topic * 0x9E3779B9) >>> 16) & mask;
+    }
+
     private int createEncoding(int topic, int wordUsageCount){
         int encoding = wordUsageCount << topicMaskSize;
         encoding += topic;
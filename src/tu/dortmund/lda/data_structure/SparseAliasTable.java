@@ -0,0 +1,173 @@
+package tu.dortmund.lda.data_structure;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import tu.dortmund.lda.kernel.Kernels;
+
+/**
+ * Alias table over the few topics of a word with a nonzero count, mixed with a
+ * dense smoothing table that all words share. The proposal of a word w is
+ * split into a sparse part, which only covers the topics with n_tw > 0, and a
+ * smoothing part weight_w * s(t) that has the same shape s for every word.
+ * A topic is drawn from the sparse table with probability
+ * sparseSum / (sparseSum + weight_w * smoothingSum) and from the smoothing
+ * table otherwise. Memory and construction cost therefore depend on the number
+ * of nonzero topics of the word instead of the number of topics.
+ *
+ * The smoothing table is read at sampling time, so rebuilding it in place
+ * changes the proposal of every word at once.
+ */
+public class SparseAliasTable implements ProposalTable {
+
+    private final AliasTable smoothingTable;
+    private double smoothingWeight;
+
+    /**
+     * The topics of the sparse part in ascending order and their unnormalized
+     * probabilities.
+     */
+    private int[] topics;
+    private double[] unnormalizedProbability;
+    private double[] probabilityForIndex;
+    private int[] alternativeForIndex;
+
+    private int size;
+    private int sampleCount;
+    private double probabilitySum;
+
+    /**
+     * @param smoothingTable  The shared smoothing table.
+     * @param smoothingWeight The weight of the smoothing table for this word.
+     */
+    public SparseAliasTable(AliasTable smoothingTable, double smoothingWeight) {
+        this.smoothingTable = smoothingTable;
+        this.smoothingWeight = smoothingWeight;
+        this.topics = new int[0];
+        this.unnormalizedProbability = new double[0];
+        this.probabilityForIndex = new double[0];
+        this.alternativeForIndex = new int[0];
+    }
+
+    /**
+     * Removes all topics from the sparse part.
+     */
+    public void clear() {
+        size = 0;
+        probabilitySum = 0.0;
+    }
+
+    /**
+     * Sets the weight of the smoothing table, for example after the priors
+     * changed.
+     */
+    public void setSmoothingWeight(double smoothingWeight) {
+        this.smoothingWeight = smoothingWeight;
+    }
+
+    /**
+     * Adds a topic to the sparse part. The topics have to be added in ascending
+     * order and {@link #construct()} has to be called afterwards.
+     */
+    public void add(int topic, double probability) {
+        if (size == topics.length) {
+            int capacity = Math.max(4, 2 * size);
+            topics = Arrays.copyOf(topics, capacity);
+            unnormalizedProbability = Arrays.copyOf(unnormalizedProbability, capacity);
+        }
+        topics[size] = topic;
+        unnormalizedProbability[size] = probability;
+        probabilitySum += probability;
+        size++;
+    }
+
+    public void construct() {
+        if (size < topics.length / 4) {
+            // the word lost most of its topics, release the memory
+            int capacity = Math.max(4, 2 * size);
+            topics = Arrays.copyOf(topics, capacity);
+            unnormalizedProbability = Arrays.copyOf(unnormalizedProbability, capacity);
+        }
+        if (probabilityForIndex.length != topics.length) {
+            probabilityForIndex = new double[topics.length];
+            alternativeForIndex = new int[topics.length];
+        }
+        if (size > 0) {
+            AliasTable.construct(unnormalizedProbability, size, probabilitySum, probabilityForIndex,
+                    alternativeForIndex, Kernels.getDefault());
+        }
+    }
+
+    /**
+     * Draws a topic and increases the sample count of this table and, if the
+     * topic comes from the smoothing part, of the smoothing table.
+     */
+    @Override
+    public int sample(SplittableRandom random) {
+        sampleCount++;
+        double u = random.nextDouble() * (probabilitySum + smoothingWeight * smoothingTable.getProbabilitySum());
+        if (u < probabilitySum) {
+            return sampleSparse(random);
+        }
+        return smoothingTable.sample(random);
+    }
+
+    /**
+     * Like {@link #sample(SplittableRandom)}, but does not increase the sample
+     * counts. Several threads can therefore sample from the same table.
+     */
+    public int sampleShared(SplittableRandom random) {
+        double u = random.nextDouble() * (probabilitySum + smoothingWeight * smoothingTable.getProbabilitySum());
+        if (u < probabilitySum) {
+            return sampleSparse(random);
+        }
+        return smoothingTable.sampleShared(random);
+    }
+
+    private int sampleSparse(SplittableRandom random) {
+        int randomBucket = random.nextInt(size);
+        if (probabilityForIndex[randomBucket] > random.nextDouble()) {
+            return topics[randomBucket];
+        } else {
+            return topics[alternativeForIndex[randomBucket]];
+        }
+    }
+
+    @Override
+    public void resetSampleCount() {
+        this.sampleCount = 0;
+    }
+
+    @Override
+    public int getSampleCount() {
+        return this.sampleCount;
+    }
+
+    /**
+     * Takes O(log nonzero topics) time to find the topic in the sparse part.
+     */
+    @Override
+    public double getProbability(int topic) {
+        double probability = smoothingWeight * smoothingTable.getProbability(topic);
+        int index = Arrays.binarySearch(topics, 0, size, topic);
+        if (index >= 0) {
+            probability += unnormalizedProbability[index];
+        }
+        return probability;
+    }
+
+    /**
+     * @return The sum of the sparse and the weighted smoothing part.
+     */
+    @Override
+    public double getProbabilitySum() {
+        return probabilitySum + smoothingWeight * smoothingTable.getProbabilitySum();
+    }
+
+    /**
+     * @return Number of topics in the sparse part.
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,438 @@
+package tu.dortmund.lda.data_structure;
+
+import java.util.Arrays;
+
+/**
+ * Count matrix that holds the number of times a topic is used inside a
+ * document. A document usually uses only a few of all topics, therefore only
+ * the nonzero counts are stored. Each document has its own open addressing hash
+ * table (linear probing) of (topic, count) pairs that are stored next to each
+ * other in a single int array. Reading, incrementing and decrementing a count
+ * takes O(1) expected time and the nonzero topics of a document can be
+ * iterated through the slots of its table.
+ *
+ * In the packed layout a slot is a single int that holds the count in the high
+ * bits and the topic in the low ceil(log2(numTopics)) bits, which halves the
+ * memory of the tables. A document whose count does not fit into the remaining
+ * bits is promoted to the (topic, count) pair layout.
+ */
+public class SparseDocTopicMatrix {
+
+    private static final int[] EMPTY_TABLE = new int[0];
+    private static final int MIN_SLOTS = 4;
+
+    private final int numTopics;
+
+    /**
+     * Number of low bits that hold the topic of a packed slot, 0 if the tables
+     * are not packed.
+     */
+    private final int topicBits;
+    private final int topicMask;
+    private final int maxPackedCount;
+
+    /**
+     * Hash table of every document. Slot i of document d holds the topic at
+     * tables[d][2 * i] and the count at tables[d][2 * i + 1]. A slot is empty if
+     * its count is zero.
+     */
+    private int[][] tables;
+    private int[] numNonzero;
+
+    /**
+     * True for the documents whose table was promoted to the pair layout, null if
+     * the tables are not packed.
+     */
+    private boolean[] wide;
+
+    public SparseDocTopicMatrix(int numDocuments, int numTopics) {
+        this(numDocuments, numTopics, false);
+    }
+
+    /**
+     * @param packed If true, a slot takes a single int instead of two as long as
+     *               the counts of the document fit.
+     */
+    public SparseDocTopicMatrix(int numDocuments, int numTopics, boolean packed) {
+        this.numTopics = numTopics;
+        this.topicBits = packed ? Math.max(1, 32 - Integer.numberOfLeadingZeros(numTopics - 1)) : 0;
+        this.topicMask = (1 << topicBits) - 1;
+        this.maxPackedCount = -1 >>> topicBits;
+        this.tables = new int[numDocuments][];
+        this.numNonzero = new int[numDocuments];
+        this.wide = packed ? new boolean[numDocuments] : null;
+        for (int document = 0; document < numDocuments; document++) {
+            tables[document] = EMPTY_TABLE;
+        }
+    }
+
+    private boolean isPacked(int document) {
+        return topicBits != 0 && !wide[document];
+    }
+
+    public int get(int document, int topic) {
+        int[] table = tables[document];
+        if (table.length == 0) {
+            return 0;
+        }
+        if (isPacked(document)) {
+            int mask = table.length - 1;
+            int slot = hash(topic, mask);
+            while (table[slot] != 0) {
+                if ((table[slot] & topicMask) == topic) {
+                    return table[slot] >>> topicBits;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return 0;
+        }
+        int mask = (table.length >> 1) - 1;
+        int slot = hash(topic, mask);
+        while (table[2 * slot + 1] != 0) {
+            if (table[2 * slot] == topic) {
+                return table[2 * slot + 1];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    public void increment(int document, int topic) {
+        add(document, topic, 1);
+    }
+
+    /**
+     * Adds a positive delta to a count.
+     */
+    public void add(int document, int topic, int delta) {
+        if (isPacked(document)) {
+            addPacked(document, topic, delta);
+            return;
+        }
+        int[] table = tables[document];
+        if (table.length != 0) {
+            int mask = (table.length >> 1) - 1;
+            int slot = hash(topic, mask);
+            while (table[2 * slot + 1] != 0) {
+                if (table[2 * slot] == topic) {
+                    table[2 * slot + 1] += delta;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        // the topic is new, keep the load factor at most 3/4 to keep the probe sequences short
+        if (4 * (numNonzero[document] + 1) > 3 * (table.length >> 1)) {
+            table = grow(document);
+        }
+        int mask = (table.length >> 1) - 1;
+        int slot = hash(topic, mask);
+        while (table[2 * slot + 1] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[2 * slot] = topic;
+        table[2 * slot + 1] = delta;
+        numNonzero[document]++;
+    }
+
+    private void addPacked(int document, int topic, int delta) {
+        int[] table = tables[document];
+        if (table.length != 0) {
+            int mask = table.length - 1;
+            int slot = hash(topic, mask);
+            while (table[slot] != 0) {
+                if ((table[slot] & topicMask) == topic) {
+                    int count = (table[slot] >>> topicBits) + delta;
+                    if (count > maxPackedCount) {
+                        promote(document);
+                        add(document, topic, delta);
+                        return;
+                    }
+                    table[slot] = count << topicBits | topic;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        if (delta > maxPackedCount) {
+            promote(document);
+            add(document, topic, delta);
+            return;
+        }
+
+        if (4 * (numNonzero[document] + 1) > 3 * table.length) {
+            table = growPacked(document);
+        }
+        int mask = table.length - 1;
+        int slot = hash(topic, mask);
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = delta << topicBits | topic;
+        numNonzero[document]++;
+    }
+
+    public void decrement(int document, int topic) {
+        if (isPacked(document)) {
+            decrementPacked(document, topic);
+            return;
+        }
+        int[] table = tables[document];
+        int mask = (table.length >> 1) - 1;
+        int slot = hash(topic, mask);
+        while (table[2 * slot] != topic || table[2 * slot + 1] == 0) {
+            if (table[2 * slot + 1] == 0) {
+                throw new IllegalStateException("Topic " + topic + " has a zero count in document " + document);
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (--table[2 * slot + 1] == 0) {
+            remove(table, slot, mask);
+            numNonzero[document]--;
+        }
+    }
+
+    private void decrementPacked(int document, int topic) {
+        int[] table = tables[document];
+        int mask = table.length - 1;
+        int slot = hash(topic, mask);
+        while ((table[slot] & topicMask) != topic || table[slot] == 0) {
+            if (table[slot] == 0) {
+                throw new IllegalStateException("Topic " + topic + " has a zero count in document " + document);
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] -= 1 << topicBits;
+        if ((table[slot] >>> topicBits) == 0) {
+            removePacked(table, slot, mask);
+            numNonzero[document]--;
+        }
+    }
+
+    /**
+     * Empties the given slot and shifts the following entries back, such that no
+     * probe sequence gets interrupted.
+     */
+    private void remove(int[] table, int slot, int mask) {
+        int empty = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            int count = table[2 * next + 1];
+            if (count == 0) {
+                break;
+            }
+            int home = hash(table[2 * next], mask);
+            // move the entry if its home slot is not between empty and next (cyclic)
+            if (((next - home) & mask) >= ((next - empty) & mask)) {
+                table[2 * empty] = table[2 * next];
+                table[2 * empty + 1] = count;
+                empty = next;
+            }
+        }
+        table[2 * empty] = 0;
+        table[2 * empty + 1] = 0;
+    }
+
+    /**
+     * Like {@link #remove(int[], int, int)} for the packed layout.
+     */
+    private void removePacked(int[] table, int slot, int mask) {
+        int empty = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            int entry = table[next];
+            if (entry == 0) {
+                break;
+            }
+            int home = hash(entry & topicMask, mask);
+            if (((next - home) & mask) >= ((next - empty) & mask)) {
+                table[empty] = entry;
+                empty = next;
+            }
+        }
+        table[empty] = 0;
+    }
+
+    private int[] growPacked(int document) {
+        int[] oldTable = tables[document];
+        int numSlots = Math.max(MIN_SLOTS, 2 * oldTable.length);
+        int[] table = new int[numSlots];
+        int mask = numSlots - 1;
+        for (int entry : oldTable) {
+            if (entry != 0) {
+                int slot = hash(entry & topicMask, mask);
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = entry;
+            }
+        }
+        tables[document] = table;
+        return table;
+    }
+
+    /**
+     * Converts the packed table of a document into the pair layout. The slots
+     * keep their positions since the number of slots does not change.
+     */
+    private void promote(int document) {
+        int[] packedTable = tables[document];
+        int[] table = new int[2 * packedTable.length];
+        for (int slot = 0; slot < packedTable.length; slot++) {
+            if (packedTable[slot] != 0) {
+                table[2 * slot] = packedTable[slot] & topicMask;
+                table[2 * slot + 1] = packedTable[slot] >>> topicBits;
+            }
+        }
+        tables[document] = table;
+        wide[document] = true;
+    }
+
+    private int[] grow(int document) {
+        int[] oldTable = tables[document];
+        int numSlots = Math.max(MIN_SLOTS, oldTable.length);
+        int[] table = new int[2 * numSlots];
+        int mask = numSlots - 1;
+        for (int i = 0; i < oldTable.length; i += 2) {
+            if (oldTable[i + 1] != 0) {
+                int slot = hash(oldTable[i], mask);
+                while (table[2 * slot + 1] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[2 * slot] = oldTable[i];
+                table[2 * slot + 1] = oldTable[i + 1];
+            }
+        }
+        tables[document] = table;
+        return table;
+    }
+
+    private static int hash(int topic, int mask) {
+        // Fibonacci hashing, the high bits of the product are the best mixed ones
+        return ((topic * 0x9E3779B9) >>> 16) & mask;
+    }
+
+    /**
+     * Sets all counts of a document to zero. The memory of its hash table is
+     * kept.
+     */
+    public void clear(int document) {
+        Arrays.fill(tables[document], 0);
+        numNonzero[document] = 0;
+    }
+
+    /**
+     * Sets all counts of a document to zero and frees the memory of its hash
+     * table.
+     */
+    public void release(int document) {
+        tables[document] = EMPTY_TABLE;
+        numNonzero[document] = 0;
+        if (wide != null) {
+            wide[document] = false;
+        }
+    }
+
+    /**
+     * @return A deep copy of this matrix.
+     */
+    public SparseDocTopicMatrix copy() {
+        SparseDocTopicMatrix copy = new SparseDocTopicMatrix(0, numTopics, topicBits != 0);
+        copy.tables = new int[tables.length][];
+        for (int document = 0; document < tables.length; document++) {
+            copy.tables[document] = tables[document].length == 0 ? EMPTY_TABLE : tables[document].clone();
+        }
+        copy.numNonzero = numNonzero.clone();
+        copy.wide = wide == null ? null : wide.clone();
+        return copy;
+    }
+
+    /**
+     * Appends documents without any counts.
+     */
+    public void addDocuments(int count) {
+        int numDocuments = tables.length;
+        tables = Arrays.copyOf(tables, numDocuments + count);
+        numNonzero = Arrays.copyOf(numNonzero, numDocuments + count);
+        Arrays.fill(tables, numDocuments, tables.length, EMPTY_TABLE);
+        if (wide != null) {
+            wide = Arrays.copyOf(wide, numDocuments + count);
+        }
+    }
+
+    /**
+     * Removes the first documents. Document i becomes document i - count.
+     */
+    public void removeDocuments(int count) {
+        tables = Arrays.copyOfRange(tables, count, tables.length);
+        numNonzero = Arrays.copyOfRange(numNonzero, count, numNonzero.length);
+        if (wide != null) {
+            wide = Arrays.copyOfRange(wide, count, wide.length);
+        }
+    }
+
+    /**
+     * Sets all counts to zero.
+     */
+    public void clear() {
+        for (int document = 0; document < tables.length; document++) {
+            tables[document] = EMPTY_TABLE;
+            numNonzero[document] = 0;
+        }
+        if (wide != null) {
+            Arrays.fill(wide, false);
+        }
+    }
+
+    /**
+     * @return Number of topics with a nonzero count in the document.
+     */
+    public int getNumNonzero(int document) {
+        return numNonzero[document];
+    }
+
+    /**
+     * Returns the number of slots of the document's hash table. Together with
+     * {@link #getTopic(int, int)} and {@link #getCount(int, int)} this allows to
+     * iterate over the nonzero topics of a document. Since empty slots have a
+     * count of zero, sums over count * f(topic) need no special case for them.
+     */
+    public int getNumSlots(int document) {
+        if (isPacked(document)) {
+            return tables[document].length;
+        }
+        return tables[document].length >> 1;
+    }
+
+    /**
+     * @return The topic stored in the slot. Only valid if the count of the slot is
+     *         nonzero.
+     */
+    public int getTopic(int document, int slot) {
+        if (isPacked(document)) {
+            return tables[document][slot] & topicMask;
+        }
+        return tables[document][2 * slot];
+    }
+
+    /**
+     * @return The count stored in the slot or 0 if the slot is empty.
+     */
+    public int getCount(int document, int slot) {
+        if (isPacked(document)) {
+            return tables[document][slot] >>> topicBits;
+        }
+        return tables[document][2 * slot + 1];
+    }
+
+    public int getNumDocuments() {
+        return tables.length;
+    }
+
+    public int getNumTopics() {
+        return numTopics;
+    }
+}
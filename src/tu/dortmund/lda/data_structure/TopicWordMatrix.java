@@ -0,0 +1,41 @@
+package tu.dortmund.lda.data_structure;
+
+/**
+ * Count matrix that holds the number of times a word is assigned to a topic
+ * throughout the whole corpus. The samplers usually iterate over all topics of
+ * a single word, so implementations should make this access pattern cheap.
+ */
+public interface TopicWordMatrix {
+
+    public int get(int topic, int word);
+
+    public void set(int topic, int word, int count);
+
+    public void increment(int topic, int word);
+
+    public void decrement(int topic, int word);
+
+    public void add(int topic, int word, int delta);
+
+    /**
+     * Atomically adds delta to a cell, such that several threads can update the
+     * matrix concurrently.
+     * 
+     * @return The count before the update.
+     */
+    public int getAndAdd(int topic, int word, int delta);
+
+    /**
+     * Sets all counts to zero.
+     */
+    public void clear();
+
+    /**
+     * @return A deep copy of this matrix.
+     */
+    public TopicWordMatrix copy();
+
+    public int getNumTopics();
+
+    public int getVocabularySize();
+}
@@ -0,0 +1,117 @@
+package tu.dortmund.lda.data_structure;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Topic word matrix that stores all counts in a single int array in word major
+ * order. The counts of all topics of one word are therefore stored next to each
+ * other and iterating over them is a sequential scan. A single array holds at
+ * most Integer.MAX_VALUE - 8 counts, larger matrices are created with
+ * {@link #create(int, int)}.
+ */
+public class WordMajorTopicWordMatrix implements ContiguousTopicWordMatrix {
+
+    private static final VarHandle INT_ARRAY = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private static final long MAX_SIZE = Integer.MAX_VALUE - 8;
+
+    private final int numTopics;
+    private final int vocabularySize;
+    private final int[] counts;
+
+    public WordMajorTopicWordMatrix(int numTopics, int vocabularySize) {
+        if ((long) numTopics * vocabularySize > MAX_SIZE) {
+            throw new IllegalArgumentException(
+                    "Matrix with " + numTopics + " topics and " + vocabularySize + " words is too large");
+        }
+        this.numTopics = numTopics;
+        this.vocabularySize = vocabularySize;
+        this.counts = new int[numTopics * vocabularySize];
+    }
+
+    /**
+     * @return A WordMajorTopicWordMatrix, or a {@link ChunkedTopicWordMatrix} if
+     *         the counts do not fit into a single array.
+     */
+    public static ContiguousTopicWordMatrix create(int numTopics, int vocabularySize) {
+        if ((long) numTopics * vocabularySize > MAX_SIZE) {
+            return new ChunkedTopicWordMatrix(numTopics, vocabularySize);
+        }
+        return new WordMajorTopicWordMatrix(numTopics, vocabularySize);
+    }
+
+    private WordMajorTopicWordMatrix(WordMajorTopicWordMatrix other) {
+        this.numTopics = other.numTopics;
+        this.vocabularySize = other.vocabularySize;
+        this.counts = other.counts.clone();
+    }
+
+    @Override
+    public int get(int topic, int word) {
+        return counts[word * numTopics + topic];
+    }
+
+    @Override
+    public void set(int topic, int word, int count) {
+        counts[word * numTopics + topic] = count;
+    }
+
+    @Override
+    public void increment(int topic, int word) {
+        counts[word * numTopics + topic]++;
+    }
+
+    @Override
+    public void decrement(int topic, int word) {
+        counts[word * numTopics + topic]--;
+    }
+
+    @Override
+    public void add(int topic, int word, int delta) {
+        counts[word * numTopics + topic] += delta;
+    }
+
+    @Override
+    public int getAndAdd(int topic, int word, int delta) {
+        return (int) INT_ARRAY.getAndAdd(counts, word * numTopics + topic, delta);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(counts, 0);
+    }
+
+    @Override
+    public TopicWordMatrix copy() {
+        return new WordMajorTopicWordMatrix(this);
+    }
+
+    /**
+     * @return The backing array, the counts of word w start at w * numTopics.
+     */
+    public int[] getCounts() {
+        return counts;
+    }
+
+    @Override
+    public int[] getRowArray(int word) {
+        return counts;
+    }
+
+    @Override
+    public int getRowOffset(int word) {
+        return word * numTopics;
+    }
+
+    @Override
+    public int getNumTopics() {
+        return numTopics;
+    }
+
+    @Override
+    public int getVocabularySize() {
+        return vocabularySize;
+    }
+}
@@ -0,0 +1,106 @@
+package tu.dortmund.lda.data_structure;
+
+import tu.dortmund.lda.corpus.Corpus;
+
+/**
+ * Inverted index of a corpus, which lists the occurrences of every word (CSC).
+ * The occurrences of word w are entries offsets[w] to offsets[w+1]-1 of
+ * occurrences. An occurrence packs the document into the high and the position
+ * of the token in the document into the low 32 bits of a long, so the
+ * occurrences of a word are sorted by document and position.
+ *
+ * The index is built with a counting sort in two passes over the corpus and
+ * needs 8 bytes per token and 4 bytes per word, without any object per token.
+ */
+public class WordOccurrenceIndex {
+
+    private final int[] offsets;
+    private final long[] occurrences;
+
+    public WordOccurrenceIndex(Corpus documents, int vocabularySize) {
+        long numTokens = documents.getNumTokens();
+        if (numTokens > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("The index supports at most 2^31 tokens");
+        }
+
+        // first pass counts the occurrences of every word
+        offsets = new int[vocabularySize + 1];
+        for (int document = 0; document < documents.getNumDocuments(); document++) {
+            for (int token = 0; token < documents.getDocumentLength(document); token++) {
+                offsets[documents.getWord(document, token) + 1]++;
+            }
+        }
+        for (int word = 0; word < vocabularySize; word++) {
+            offsets[word + 1] += offsets[word];
+        }
+
+        // second pass places every token at the next free position of its word
+        occurrences = new long[offsets[vocabularySize]];
+        int[] nextPosition = new int[vocabularySize];
+        System.arraycopy(offsets, 0, nextPosition, 0, vocabularySize);
+        for (int document = 0; document < documents.getNumDocuments(); document++) {
+            for (int token = 0; token < documents.getDocumentLength(document); token++) {
+                occurrences[nextPosition[documents.getWord(document, token)]++] = pack(document, token);
+            }
+        }
+    }
+
+    private static long pack(int document, int token) {
+        return (long) document << 32 | token;
+    }
+
+    public int getVocabularySize() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * @return The index of the first occurrence of the word.
+     */
+    public int getFirst(int word) {
+        return offsets[word];
+    }
+
+    /**
+     * @return The index after the last occurrence of the word.
+     */
+    public int getEnd(int word) {
+        return offsets[word + 1];
+    }
+
+    public int getNumOccurrences(int word) {
+        return offsets[word + 1] - offsets[word];
+    }
+
+    public int getDocument(int occurrence) {
+        return (int) (occurrences[occurrence] >>> 32);
+    }
+
+    /**
+     * @return The position of the token in its document.
+     */
+    public int getToken(int occurrence) {
+        return (int) occurrences[occurrence];
+    }
+
+    /**
+     * Finds the first occurrence of a word in a document that is not smaller
+     * than the given one. Together with the occurrence of the end of a document
+     * range this gives the occurrences of a word within the range.
+     *
+     * @return An index between getFirst(word) and getEnd(word).
+     */
+    public int findDocument(int word, int document) {
+        long key = pack(document, 0);
+        int low = offsets[word];
+        int high = offsets[word + 1];
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (occurrences[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
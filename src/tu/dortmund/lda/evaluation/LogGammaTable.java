@@ -0,0 +1,81 @@
+package tu.dortmund.lda.evaluation;
+
+/**
+ * Lookup table of logGamma(prior + count) - logGamma(prior) for small integer
+ * counts. The log likelihood of a model with a symmetric prior only needs
+ * these differences, and most counts are small. The table is filled with
+ * logGamma(x + 1) = logGamma(x) + log(x), so it costs one logarithm per entry.
+ * Larger counts fall back to Stirling's approximation.
+ */
+public class LogGammaTable {
+
+    /**
+     * Upper bound of the table size, such that a few very large counts do not
+     * allocate a huge table.
+     */
+    public static final int MAX_SIZE = 1 << 16;
+
+    private final double prior;
+    private final double logGammaPrior;
+    private final double[] table;
+
+    /**
+     * @param prior    The symmetric prior.
+     * @param maxCount The largest count that is expected.
+     */
+    public LogGammaTable(double prior, int maxCount) {
+        this.prior = prior;
+        this.logGammaPrior = logGamma(prior);
+        this.table = new double[Math.max(1, Math.min(maxCount + 1, MAX_SIZE))];
+        for (int count = 1; count < table.length; count++) {
+            table[count] = table[count - 1] + Math.log(prior + count - 1);
+        }
+    }
+
+    /**
+     * @return logGamma(prior + count) - logGamma(prior)
+     */
+    public double get(int count) {
+        if (count < table.length) {
+            return table[count];
+        }
+        return logGamma(prior + count) - logGammaPrior;
+    }
+
+    /**
+     * @return True if all values of the prior are equal.
+     */
+    public static boolean isSymmetric(double[] prior) {
+        for (double value : prior) {
+            if (value != prior[0]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final double HALF_LOG_TWO_PI = Math.log(2 * Math.PI) / 2;
+
+    /**
+     * Fifth order Stirling's approximation, the same as
+     * GibbsLda.logGammaStirling. Values below 2 are shifted up first.
+     */
+    public static double logGamma(double z) {
+        int shift = 0;
+        while (z < 2) {
+            z++;
+            shift++;
+        }
+
+        double result = HALF_LOG_TWO_PI + (z - 0.5) * Math.log(z) - z + 1 / (12 * z) - 1 / (360 * z * z * z)
+                + 1 / (1260 * z * z * z * z * z);
+
+        while (shift > 0) {
+            shift--;
+            z--;
+            result -= Math.log(z);
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,78 @@
+package tu.dortmund.lda.evaluation;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Sums a function over the ranges of an index interval with the fork join
+ * framework. The interval is split in halves until a range has at most grain
+ * indices, independent of the number of threads. The partial sums are always
+ * added in the same order, so the result does not depend on the number of
+ * threads either.
+ */
+public class ParallelSum {
+
+    /**
+     * A function of the indices [first, last).
+     */
+    public interface RangeFunction {
+        double apply(int first, int last);
+    }
+
+    private ParallelSum() {
+    }
+
+    /**
+     * @param numThreads Number of threads. With a single thread the sum is
+     *                   computed in the calling thread.
+     * @param size       Number of indices.
+     * @param grain      Maximum number of indices of a range.
+     * @param function   The function that is summed.
+     * @return Sum of the function over all ranges.
+     */
+    public static double sum(int numThreads, int size, int grain, RangeFunction function) {
+        SumTask task = new SumTask(function, 0, size, grain);
+        if (numThreads == 1) {
+            return task.compute();
+        }
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            return pool.invoke(task);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static class SumTask extends RecursiveTask<Double> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final RangeFunction function;
+        private final int first;
+        private final int last;
+        private final int grain;
+
+        SumTask(RangeFunction function, int first, int last, int grain) {
+            this.function = function;
+            this.first = first;
+            this.last = last;
+            this.grain = grain;
+        }
+
+        @Override
+        protected Double compute() {
+            if (last - first <= grain) {
+                return function.apply(first, last);
+            }
+            int middle = (first + last) >>> 1;
+            SumTask left = new SumTask(function, first, middle, grain);
+            SumTask right = new SumTask(function, middle, last, grain);
+            if (getPool() == null) {
+                return left.compute() + right.compute();
+            }
+            left.fork();
+            double rightSum = right.compute();
+            return left.join() + rightSum;
+        }
+    }
+}
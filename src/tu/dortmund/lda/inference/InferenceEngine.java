@@ -0,0 +1,317 @@
+package tu.dortmund.lda.inference;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import tu.dortmund.lda.LdaModel;
+import tu.dortmund.lda.corpus.ArrayCorpus;
+import tu.dortmund.lda.corpus.Corpus;
+import tu.dortmund.lda.data_structure.AliasTable;
+import tu.dortmund.lda.evaluation.ParallelSum;
+
+/**
+ * Infers the topic distributions theta of unseen documents (fold-in). The topic
+ * word distributions phi of a trained model are frozen when the engine is
+ * created, and an alias table over phi is built once for every word. Every
+ * document is then sampled with its own short LightLDA chain, which alternates
+ * between document proposals and word proposals that are accepted or rejected
+ * with the Metropolis Hastings rule. Since phi is fixed, the word proposal is
+ * exactly the word part of the target distribution and its acceptance rate only
+ * depends on the document topic counts.
+ *
+ * The model is frozen at construction, and the inference itself changes no
+ * state of the engine. The engine is therefore thread-safe once configured:
+ * call {@link #setIterations(int, int)} and {@link #setNumThreads(int)} before
+ * it is shared with other threads, after that any number of threads can use it
+ * at the same time.
+ */
+public class InferenceEngine {
+
+    public static final int MH_STEPS = 2;
+
+    /**
+     * Number of documents that a task of the batch API processes.
+     */
+    private static final int BATCH_SIZE = 64;
+
+    /**
+     * Number of documents that a task of the perplexity computation processes.
+     */
+    private static final int PERPLEXITY_GRAIN = 64;
+
+    private final int numTopics;
+    private final int vocabularySize;
+    private final double[] alpha;
+    private final double alphaSum;
+
+    /**
+     * The alias table of word w samples from phi[.][w]. Its unnormalized
+     * probabilities are phi[.][w] as well.
+     */
+    private final AliasTable[] wordTables;
+    private final AliasTable alphaTable;
+
+    private int numIterations = 20;
+    private int burnIn = 10;
+    private int numThreads = 1;
+
+    /**
+     * Freezes phi and alpha of a trained model.
+     */
+    public InferenceEngine(LdaModel model) {
+        this(model.getPhi(), model.getAlpha());
+    }
+
+    /**
+     * @param phi   Topic word distributions, phi[k][w] is the probability of word
+     *              w in topic k.
+     * @param alpha Document topic prior.
+     */
+    public InferenceEngine(double[][] phi, double[] alpha) {
+        this.numTopics = phi.length;
+        this.vocabularySize = phi[0].length;
+        this.alpha = alpha.clone();
+        double alphaSum = 0.0;
+        for (double a : alpha) {
+            alphaSum += a;
+        }
+        this.alphaSum = alphaSum;
+
+        this.alphaTable = new AliasTable(numTopics);
+        System.arraycopy(alpha, 0, alphaTable.getUnnormalizedProbability(), 0, numTopics);
+        alphaTable.setProbabilitySum(alphaSum);
+        alphaTable.construct();
+
+        this.wordTables = new AliasTable[vocabularySize];
+        for (int word = 0; word < vocabularySize; word++) {
+            AliasTable table = new AliasTable(numTopics);
+            double[] p = table.getUnnormalizedProbability();
+            double sum = 0.0;
+            for (int topic = 0; topic < numTopics; topic++) {
+                p[topic] = phi[topic][word];
+                sum += p[topic];
+            }
+            table.setProbabilitySum(sum);
+            table.construct();
+            wordTables[word] = table;
+        }
+    }
+
+    /**
+     * @param numIterations Number of sweeps over every document, 20 by default.
+     * @param burnIn        Number of sweeps that are not used to estimate theta,
+     *                      10 by default.
+     */
+    public void setIterations(int numIterations, int burnIn) {
+        if (burnIn >= numIterations) {
+            throw new IllegalArgumentException("burnIn must be smaller than numIterations");
+        }
+        this.numIterations = numIterations;
+        this.burnIn = burnIn;
+    }
+
+    /**
+     * Number of threads that the batch API uses, 1 by default.
+     */
+    public void setNumThreads(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("numThreads must be at least 1");
+        }
+        this.numThreads = numThreads;
+    }
+
+    public int getNumTopics() {
+        return numTopics;
+    }
+
+    /**
+     * Infers theta of a single document. theta is the average of the document
+     * topic distributions of all sweeps after the burn in.
+     *
+     * @param document The words of the document.
+     * @param random   Random number generator of the calling thread.
+     * @return theta of the document.
+     */
+    public double[] infer(int[] document, SplittableRandom random) {
+        int length = document.length;
+        int[] z = new int[length];
+        int[] docTopic = new int[numTopics];
+        for (int i = 0; i < length; i++) {
+            if (document[i] < 0 || document[i] >= vocabularySize) {
+                throw new IllegalArgumentException(
+                        "Word " + document[i] + " is outside of the vocabulary of size " + vocabularySize);
+            }
+            // start with a draw from phi, which is a good guess for the topic of the word
+            z[i] = wordTables[document[i]].sampleShared(random);
+            docTopic[z[i]]++;
+        }
+
+        double[] theta = new double[numTopics];
+        double sumPd = length + alphaSum;
+        for (int iteration = 0; iteration < numIterations; iteration++) {
+            for (int i = 0; i < length; i++) {
+                AliasTable wordTable = wordTables[document[i]];
+                double[] phi = wordTable.getUnnormalizedProbability();
+                int oldTopic = z[i];
+                int topic = oldTopic;
+                docTopic[topic]--;
+
+                for (int mhStep = 0; mhStep < MH_STEPS; mhStep++) {
+                    // Document-Proposal q(k) ~ cdk + alphak, including the old topic of the token
+                    double u = random.nextDouble() * sumPd;
+                    int newTopic = u < length ? z[(int) u] : alphaTable.sampleShared(random);
+                    if (topic != newTopic) {
+                        double probabilityOfTopic = docTopic[topic] + alpha[topic];
+                        double proposalTopic = topic == oldTopic ? probabilityOfTopic + 1 : probabilityOfTopic;
+                        double probabilityOfNewTopic = docTopic[newTopic] + alpha[newTopic];
+                        double proposalNewTopic = newTopic == oldTopic ? probabilityOfNewTopic + 1
+                                : probabilityOfNewTopic;
+
+                        double acceptance = (probabilityOfNewTopic * phi[newTopic] * proposalTopic)
+                                / (probabilityOfTopic * phi[topic] * proposalNewTopic);
+                        if (random.nextDouble() < acceptance) {
+                            topic = newTopic;
+                        }
+                    }
+
+                    // Word-Proposal q(k) ~ phi[k][w], phi cancels out
+                    newTopic = wordTable.sampleShared(random);
+                    if (topic != newTopic) {
+                        double acceptance = (docTopic[newTopic] + alpha[newTopic]) / (docTopic[topic] + alpha[topic]);
+                        if (random.nextDouble() < acceptance) {
+                            topic = newTopic;
+                        }
+                    }
+                }
+
+                docTopic[topic]++;
+                z[i] = topic;
+            }
+
+            if (iteration >= burnIn) {
+                for (int topic = 0; topic < numTopics; topic++) {
+                    theta[topic] += (docTopic[topic] + alpha[topic]) / sumPd;
+                }
+            }
+        }
+
+        for (int topic = 0; topic < numTopics; topic++) {
+            theta[topic] /= numIterations - burnIn;
+        }
+        return theta;
+    }
+
+    public double[][] infer(int[][] documents, long seed) {
+        return infer(new ArrayCorpus(documents), seed);
+    }
+
+    /**
+     * Infers theta of many documents. The documents are processed in batches by a
+     * thread pool with numThreads threads. Every document gets its own random
+     * number generator, which is seeded from the given seed, such that the result
+     * does not depend on the number of threads.
+     *
+     * @param documents The documents.
+     * @param seed      Seed of the random number generators.
+     * @return theta of every document.
+     */
+    public double[][] infer(Corpus documents, long seed) {
+        int numDocuments = documents.getNumDocuments();
+        double[][] theta = new double[numDocuments][];
+        long[] seeds = new long[numDocuments];
+        SplittableRandom seedGenerator = new SplittableRandom(seed);
+        for (int document = 0; document < numDocuments; document++) {
+            seeds[document] = seedGenerator.nextLong();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int first = 0; first < numDocuments; first += BATCH_SIZE) {
+                int firstDocument = first;
+                int lastDocument = Math.min(numDocuments, first + BATCH_SIZE);
+                futures.add(executor.submit(() -> {
+                    for (int document = firstDocument; document < lastDocument; document++) {
+                        int[] words = new int[documents.getDocumentLength(document)];
+                        for (int token = 0; token < words.length; token++) {
+                            words[token] = documents.getWord(document, token);
+                        }
+                        theta[document] = infer(words, new SplittableRandom(seeds[document]));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the inference", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("The inference of a document failed", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        return theta;
+    }
+
+    /**
+     * Computes the perplexity of held out documents with document completion.
+     * theta of every document is inferred from the tokens at even positions and
+     * the tokens at odd positions are evaluated with p(w) = sum theta[k] phi[k][w].
+     * Evaluating the tokens that theta was inferred from would underestimate the
+     * perplexity. The documents are processed with the fork join framework and
+     * the result does not depend on the number of threads.
+     *
+     * @param documents The held out documents.
+     * @param seed      Seed of the random number generators.
+     * @return exp(-log likelihood / number of evaluated tokens)
+     */
+    public double getPerplexity(Corpus documents, long seed) {
+        int numDocuments = documents.getNumDocuments();
+        long[] seeds = new long[numDocuments];
+        SplittableRandom seedGenerator = new SplittableRandom(seed);
+        long numEvaluatedTokens = 0;
+        for (int document = 0; document < numDocuments; document++) {
+            seeds[document] = seedGenerator.nextLong();
+            numEvaluatedTokens += documents.getDocumentLength(document) / 2;
+        }
+        if (numEvaluatedTokens == 0) {
+            throw new IllegalArgumentException("The held out documents need at least one document with two tokens");
+        }
+
+        double logLikelihood = ParallelSum.sum(numThreads, numDocuments, PERPLEXITY_GRAIN, (first, last) -> {
+            double sum = 0.0;
+            for (int document = first; document < last; document++) {
+                int length = documents.getDocumentLength(document);
+                if (length < 2) {
+                    continue;
+                }
+                int[] observed = new int[(length + 1) / 2];
+                for (int token = 0; token < length; token += 2) {
+                    observed[token / 2] = documents.getWord(document, token);
+                }
+                double[] theta = infer(observed, new SplittableRandom(seeds[document]));
+                for (int token = 1; token < length; token += 2) {
+                    int word = documents.getWord(document, token);
+                    if (word < 0 || word >= vocabularySize) {
+                        throw new IllegalArgumentException(
+                                "Word " + word + " is outside of the vocabulary of size " + vocabularySize);
+                    }
+                    double[] phi = wordTables[word].getUnnormalizedProbability();
+                    double probability = 0.0;
+                    for (int topic = 0; topic < numTopics; topic++) {
+                        probability += theta[topic] * phi[topic];
+                    }
+                    sum += Math.log(probability);
+                }
+            }
+            return sum;
+        });
+        return Math.exp(-logLikelihood / numEvaluatedTokens);
+    }
+}
@@ -0,0 +1,127 @@
+package tu.dortmund.lda.kernel;
+
+import tu.dortmund.lda.data_structure.TopicWordMatrix;
+
+/**
+ * The dense loops over all topics that the samplers run for every token or
+ * every word. There is a scalar implementation and one that uses the vector
+ * API of the jdk.incubator.vector module. The vector implementation is only
+ * available if the JVM was started with --add-modules jdk.incubator.vector.
+ *
+ * The default implementation is selected with the system property lda.kernels
+ * (scalar or vector). Without the property the vector kernels are used if the
+ * module is available. The vector kernels add the probabilities in a different
+ * order, so the sums differ from the scalar ones in the last bits.
+ */
+public abstract class Kernels {
+
+    private static final String VECTOR_KERNELS = "tu.dortmund.lda.kernel.VectorKernels";
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    private static final Kernels SCALAR = new ScalarKernels();
+    private static final Kernels DEFAULT = createDefault();
+
+    public static Kernels scalar() {
+        return SCALAR;
+    }
+
+    /**
+     * @return The vector kernels.
+     * @throws UnsupportedOperationException If the module jdk.incubator.vector is
+     *                                       not available.
+     */
+    public static Kernels vector() {
+        if (!isVectorAvailable()) {
+            throw new UnsupportedOperationException(
+                    "The vector kernels need the JVM option --add-modules " + VECTOR_MODULE);
+        }
+        return VectorHolder.VECTOR;
+    }
+
+    public static boolean isVectorAvailable() {
+        return ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent();
+    }
+
+    /**
+     * @return The kernels that new models use.
+     */
+    public static Kernels getDefault() {
+        return DEFAULT;
+    }
+
+    private static Kernels createDefault() {
+        String kernels = System.getProperty("lda.kernels");
+        if (kernels == null) {
+            return isVectorAvailable() ? vector() : SCALAR;
+        }
+        switch (kernels) {
+        case "scalar":
+            return SCALAR;
+        case "vector":
+            return vector();
+        default:
+            throw new IllegalArgumentException("Unknown kernels: " + kernels);
+        }
+    }
+
+    /**
+     * Loads the vector kernels only on first use, since their class can not be
+     * loaded without the module.
+     */
+    private static class VectorHolder {
+        private static final Kernels VECTOR = load();
+
+        private static Kernels load() {
+            try {
+                return (Kernels) Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not load the vector kernels", e);
+            }
+        }
+    }
+
+    /**
+     * Computes the full conditional of the collapsed Gibbs sampler for every
+     * topic, p[t] = (docTopic[t] + alpha[t]) * (n_tw + beta) / (vecTopic[t] +
+     * betaSum).
+     *
+     * @return The sum of p.
+     */
+    public abstract double topicProbabilities(int[] docTopic, TopicWordMatrix matTopicWord, int word,
+            int[] vecTopic, double[] alpha, double beta, double betaSum, double[] p);
+
+    /**
+     * Computes q[t] = alpha[t] * (n_tw + beta) / (vecTopic[t] + betaSum) and, if
+     * q2 is not null, q2[t] = (n_tw + beta) / (vecTopic[t] + betaSum).
+     *
+     * @return The sum of q.
+     */
+    public abstract double wordProbabilities(TopicWordMatrix matTopicWord, int word, int[] vecTopic,
+            double[] alpha, double beta, double betaSum, double[] q2, double[] q);
+
+    /**
+     * Computes q[t] = alpha[t] / (vecTopic[t] + betaSum).
+     *
+     * @return The sum of q.
+     */
+    public abstract double smoothingProbabilities(int[] vecTopic, double[] alpha, double betaSum, double[] q);
+
+    /**
+     * Adds factor * docTopic[t] / (vecTopic[t] + betaSum) to q[t].
+     *
+     * @return The sum of docTopic[t] / (vecTopic[t] + betaSum).
+     */
+    public abstract double addDocumentProbabilities(int[] docTopic, int[] vecTopic, double betaSum, double factor,
+            double[] q);
+
+    /**
+     * Computes dst[i] = src[i] * factor for the first size entries.
+     */
+    public abstract void scale(double[] src, double factor, double[] dst, int size);
+
+    /**
+     * Computes nodes[i] = nodes[2 * i] + nodes[2 * i + 1] for count nodes
+     * starting with first. The children must not overlap the computed nodes.
+     */
+    public abstract void sumChildren(double[] nodes, int first, int count);
+}
@@ -0,0 +1,71 @@
+package tu.dortmund.lda.kernel;
+
+import tu.dortmund.lda.data_structure.TopicWordMatrix;
+
+/**
+ * Plain loops, which the JIT compiler may still vectorize where it can.
+ */
+class ScalarKernels extends Kernels {
+
+    @Override
+    public double topicProbabilities(int[] docTopic, TopicWordMatrix matTopicWord, int word, int[] vecTopic,
+            double[] alpha, double beta, double betaSum, double[] p) {
+        double sum = 0.0;
+        for (int t = 0; t < vecTopic.length; t++) {
+            p[t] = (docTopic[t] + alpha[t]) * (matTopicWord.get(t, word) + beta) / (vecTopic[t] + betaSum);
+            sum += p[t];
+        }
+        return sum;
+    }
+
+    @Override
+    public double wordProbabilities(TopicWordMatrix matTopicWord, int word, int[] vecTopic, double[] alpha,
+            double beta, double betaSum, double[] q2, double[] q) {
+        double sum = 0.0;
+        for (int t = 0; t < vecTopic.length; t++) {
+            double probabilityOfWord = (matTopicWord.get(t, word) + beta) / (vecTopic[t] + betaSum);
+            if (q2 != null) {
+                q2[t] = probabilityOfWord;
+            }
+            q[t] = alpha[t] * probabilityOfWord;
+            sum += q[t];
+        }
+        return sum;
+    }
+
+    @Override
+    public double smoothingProbabilities(int[] vecTopic, double[] alpha, double betaSum, double[] q) {
+        double sum = 0.0;
+        for (int t = 0; t < vecTopic.length; t++) {
+            q[t] = alpha[t] / (vecTopic[t] + betaSum);
+            sum += q[t];
+        }
+        return sum;
+    }
+
+    @Override
+    public double addDocumentProbabilities(int[] docTopic, int[] vecTopic, double betaSum, double factor,
+            double[] q) {
+        double sum = 0.0;
+        for (int t = 0; t < vecTopic.length; t++) {
+            double tmp = docTopic[t] / (vecTopic[t] + betaSum);
+            sum += tmp;
+            q[t] += factor * tmp;
+        }
+        return sum;
+    }
+
+    @Override
+    public void scale(double[] src, double factor, double[] dst, int size) {
+        for (int i = 0; i < size; i++) {
+            dst[i] = src[i] * factor;
+        }
+    }
+
+    @Override
+    public void sumChildren(double[] nodes, int first, int count) {
+        for (int i = first; i < first + count; i++) {
+            nodes[i] = nodes[2 * i] + nodes[2 * i + 1];
+        }
+    }
+}
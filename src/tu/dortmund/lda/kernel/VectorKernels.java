@@ -0,0 +1,164 @@
+package tu.dortmund.lda.kernel;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+import tu.dortmund.lda.data_structure.ContiguousTopicWordMatrix;
+import tu.dortmund.lda.data_structure.TopicWordMatrix;
+
+/**
+ * Kernels on the preferred vector shape of the CPU. The int counts are loaded
+ * with half the bit size and widened to doubles, such that both have the same
+ * number of lanes. Topic word matrices that are no
+ * {@link ContiguousTopicWordMatrix} have no contiguous rows and fall back to
+ * the scalar kernels.
+ */
+class VectorKernels extends Kernels {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class,
+            VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+    private static final int LANES = DOUBLES.length();
+
+    /**
+     * Select the even and the odd lanes of two concatenated vectors.
+     */
+    private static final VectorShuffle<Double> EVEN_LANES = VectorShuffle.fromOp(DOUBLES, i -> 2 * i);
+    private static final VectorShuffle<Double> ODD_LANES = VectorShuffle.fromOp(DOUBLES, i -> 2 * i + 1);
+
+    private final Kernels scalar = Kernels.scalar();
+
+    private static DoubleVector load(int[] array, int offset) {
+        return (DoubleVector) IntVector.fromArray(INTS, array, offset).convertShape(VectorOperators.I2D, DOUBLES, 0);
+    }
+
+    @Override
+    public double topicProbabilities(int[] docTopic, TopicWordMatrix matTopicWord, int word, int[] vecTopic,
+            double[] alpha, double beta, double betaSum, double[] p) {
+        if (!(matTopicWord instanceof ContiguousTopicWordMatrix)) {
+            return scalar.topicProbabilities(docTopic, matTopicWord, word, vecTopic, alpha, beta, betaSum, p);
+        }
+        int numTopics = vecTopic.length;
+        int[] counts = ((ContiguousTopicWordMatrix) matTopicWord).getRowArray(word);
+        int offset = ((ContiguousTopicWordMatrix) matTopicWord).getRowOffset(word);
+
+        DoubleVector sums = DoubleVector.zero(DOUBLES);
+        int t = 0;
+        for (; t < DOUBLES.loopBound(numTopics); t += LANES) {
+            DoubleVector probability = load(docTopic, t).add(DoubleVector.fromArray(DOUBLES, alpha, t))
+                    .mul(load(counts, offset + t).add(beta))
+                    .div(load(vecTopic, t).add(betaSum));
+            probability.intoArray(p, t);
+            sums = sums.add(probability);
+        }
+        double sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; t < numTopics; t++) {
+            p[t] = (docTopic[t] + alpha[t]) * (counts[offset + t] + beta) / (vecTopic[t] + betaSum);
+            sum += p[t];
+        }
+        return sum;
+    }
+
+    @Override
+    public double wordProbabilities(TopicWordMatrix matTopicWord, int word, int[] vecTopic, double[] alpha,
+            double beta, double betaSum, double[] q2, double[] q) {
+        if (!(matTopicWord instanceof ContiguousTopicWordMatrix)) {
+            return scalar.wordProbabilities(matTopicWord, word, vecTopic, alpha, beta, betaSum, q2, q);
+        }
+        int numTopics = vecTopic.length;
+        int[] counts = ((ContiguousTopicWordMatrix) matTopicWord).getRowArray(word);
+        int offset = ((ContiguousTopicWordMatrix) matTopicWord).getRowOffset(word);
+
+        DoubleVector sums = DoubleVector.zero(DOUBLES);
+        int t = 0;
+        for (; t < DOUBLES.loopBound(numTopics); t += LANES) {
+            DoubleVector probabilityOfWord = load(counts, offset + t).add(beta).div(load(vecTopic, t).add(betaSum));
+            if (q2 != null) {
+                probabilityOfWord.intoArray(q2, t);
+            }
+            DoubleVector probability = probabilityOfWord.mul(DoubleVector.fromArray(DOUBLES, alpha, t));
+            probability.intoArray(q, t);
+            sums = sums.add(probability);
+        }
+        double sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; t < numTopics; t++) {
+            double probabilityOfWord = (counts[offset + t] + beta) / (vecTopic[t] + betaSum);
+            if (q2 != null) {
+                q2[t] = probabilityOfWord;
+            }
+            q[t] = alpha[t] * probabilityOfWord;
+            sum += q[t];
+        }
+        return sum;
+    }
+
+    @Override
+    public double smoothingProbabilities(int[] vecTopic, double[] alpha, double betaSum, double[] q) {
+        int numTopics = vecTopic.length;
+        DoubleVector sums = DoubleVector.zero(DOUBLES);
+        int t = 0;
+        for (; t < DOUBLES.loopBound(numTopics); t += LANES) {
+            DoubleVector probability = DoubleVector.fromArray(DOUBLES, alpha, t).div(load(vecTopic, t).add(betaSum));
+            probability.intoArray(q, t);
+            sums = sums.add(probability);
+        }
+        double sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; t < numTopics; t++) {
+            q[t] = alpha[t] / (vecTopic[t] + betaSum);
+            sum += q[t];
+        }
+        return sum;
+    }
+
+    @Override
+    public double addDocumentProbabilities(int[] docTopic, int[] vecTopic, double betaSum, double factor,
+            double[] q) {
+        int numTopics = vecTopic.length;
+        DoubleVector sums = DoubleVector.zero(DOUBLES);
+        int t = 0;
+        for (; t < DOUBLES.loopBound(numTopics); t += LANES) {
+            DoubleVector tmp = load(docTopic, t).div(load(vecTopic, t).add(betaSum));
+            sums = sums.add(tmp);
+            DoubleVector.fromArray(DOUBLES, q, t).add(tmp.mul(factor)).intoArray(q, t);
+        }
+        double sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; t < numTopics; t++) {
+            double tmp = docTopic[t] / (vecTopic[t] + betaSum);
+            sum += tmp;
+            q[t] += factor * tmp;
+        }
+        return sum;
+    }
+
+    @Override
+    public void scale(double[] src, double factor, double[] dst, int size) {
+        int i = 0;
+        for (; i < DOUBLES.loopBound(size); i += LANES) {
+            DoubleVector.fromArray(DOUBLES, src, i).mul(factor).intoArray(dst, i);
+        }
+        for (; i < size; i++) {
+            dst[i] = src[i] * factor;
+        }
+    }
+
+    @Override
+    public void sumChildren(double[] nodes, int first, int count) {
+        if (LANES < 2) {
+            scalar.sumChildren(nodes, first, count);
+            return;
+        }
+        int i = first;
+        for (; i < first + DOUBLES.loopBound(count); i += LANES) {
+            DoubleVector left = DoubleVector.fromArray(DOUBLES, nodes, 2 * i);
+            DoubleVector right = DoubleVector.fromArray(DOUBLES, nodes, 2 * i + LANES);
+            left.rearrange(EVEN_LANES, right).add(left.rearrange(ODD_LANES, right)).intoArray(nodes, i);
+        }
+        for (; i < first + count; i++) {
+            nodes[i] = nodes[2 * i] + nodes[2 * i + 1];
+        }
+    }
+}
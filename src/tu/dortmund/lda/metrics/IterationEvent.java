@@ -0,0 +1,72 @@
+package tu.dortmund.lda.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event that is emitted for every iteration of a sampler
+ * while a recording is running, such that the metrics can be correlated with
+ * GC and CPU profiles. The event duration is the duration of the sweep.
+ */
+@Name("tu.dortmund.lda.Iteration")
+@Label("LDA Iteration")
+@Category("LDA")
+@Description("One full corpus sweep of an LDA sampler")
+public class IterationEvent extends Event {
+
+    @Label("Sampler")
+    String sampler;
+
+    @Label("Iteration")
+    long iteration;
+
+    @Label("Tokens per Second")
+    double tokensPerSecond;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+
+    @Label("Document Acceptance Rate")
+    double documentAcceptanceRate;
+
+    @Label("Word Acceptance Rate")
+    double wordAcceptanceRate;
+
+    @Label("Alias Table Rebuilds")
+    long aliasTableRebuilds;
+
+    @Label("S Bucket Hits")
+    long sBucketHits;
+
+    @Label("R Bucket Hits")
+    long rBucketHits;
+
+    @Label("Q Bucket Hits")
+    long qBucketHits;
+
+    @Label("F+ Tree Updates")
+    long fTreeUpdates;
+
+    /**
+     * Copies the metrics into the event and commits it.
+     */
+    public void commit(String sampler, IterationMetrics metrics) {
+        this.sampler = sampler;
+        this.iteration = metrics.getIteration();
+        this.tokensPerSecond = metrics.getTokensPerSecond();
+        this.allocatedBytes = metrics.getAllocatedBytes();
+        this.documentAcceptanceRate = metrics.getDocumentAcceptanceRate();
+        this.wordAcceptanceRate = metrics.getWordAcceptanceRate();
+        this.aliasTableRebuilds = metrics.getAliasTableRebuilds();
+        this.sBucketHits = metrics.getSBucketHits();
+        this.rBucketHits = metrics.getRBucketHits();
+        this.qBucketHits = metrics.getQBucketHits();
+        this.fTreeUpdates = metrics.getFTreeUpdates();
+        commit();
+    }
+}
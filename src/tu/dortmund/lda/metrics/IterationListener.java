@@ -0,0 +1,13 @@
+package tu.dortmund.lda.metrics;
+
+/**
+ * Receives the metrics of every iteration of a sampler.
+ */
+public interface IterationListener {
+
+    /**
+     * Called in the thread that runs the model after every iteration. The
+     * metrics object must not be kept, it is only valid during the call.
+     */
+    void iterationFinished(IterationMetrics metrics);
+}
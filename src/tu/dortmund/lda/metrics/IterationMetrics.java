@@ -0,0 +1,216 @@
+package tu.dortmund.lda.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Counters of a single iteration (full corpus sweep) of a sampler. The
+ * samplers only fill in the counters that apply to them, all others stay zero.
+ * The counters are not thread safe, in a parallel sweep every worker counts
+ * into its own instance and the instances are merged after the sweep.
+ */
+public class IterationMetrics {
+
+    private long iteration;
+    private long numTokens;
+    private long elapsedNanos;
+    private long allocatedBytes;
+
+    private long documentProposals;
+    private long documentAcceptances;
+    private long wordProposals;
+    private long wordAcceptances;
+    private long aliasTableRebuilds;
+
+    private long sBucketHits;
+    private long rBucketHits;
+    private long qBucketHits;
+
+    private long fTreeUpdates;
+
+    public void countDocumentProposal(boolean accepted) {
+        documentProposals++;
+        documentAcceptances += accepted ? 1 : 0;
+    }
+
+    public void countWordProposal(boolean accepted) {
+        wordProposals++;
+        wordAcceptances += accepted ? 1 : 0;
+    }
+
+    public void countAliasTableRebuilds(int rebuilds) {
+        aliasTableRebuilds += rebuilds;
+    }
+
+    /**
+     * Counts which of the three SparseLDA buckets a sample was drawn from.
+     * 
+     * @param bucket 0 for the smoothing bucket s, 1 for the document bucket r and
+     *               2 for the topic word bucket q.
+     */
+    public void countBucketHit(int bucket) {
+        if (bucket == 0) {
+            sBucketHits++;
+        } else if (bucket == 1) {
+            rBucketHits++;
+        } else {
+            qBucketHits++;
+        }
+    }
+
+    public void countFTreeUpdates(int updates) {
+        fTreeUpdates += updates;
+    }
+
+    /**
+     * Adds the counters of a worker to this instance.
+     */
+    public void merge(IterationMetrics other) {
+        documentProposals += other.documentProposals;
+        documentAcceptances += other.documentAcceptances;
+        wordProposals += other.wordProposals;
+        wordAcceptances += other.wordAcceptances;
+        aliasTableRebuilds += other.aliasTableRebuilds;
+        sBucketHits += other.sBucketHits;
+        rBucketHits += other.rBucketHits;
+        qBucketHits += other.qBucketHits;
+        fTreeUpdates += other.fTreeUpdates;
+    }
+
+    /**
+     * Sets the values that the model measures around the sweep.
+     */
+    public void finish(long iteration, long numTokens, long elapsedNanos, long allocatedBytes) {
+        this.iteration = iteration;
+        this.numTokens = numTokens;
+        this.elapsedNanos = elapsedNanos;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * @return Number of the iteration, counted from 0 since the model was
+     *         created.
+     */
+    public long getIteration() {
+        return iteration;
+    }
+
+    public long getNumTokens() {
+        return numTokens;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getTokensPerSecond() {
+        return numTokens / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * @return Bytes that all threads allocated during the sweep, or -1 if the JVM
+     *         can not measure it.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long getDocumentProposals() {
+        return documentProposals;
+    }
+
+    public long getDocumentAcceptances() {
+        return documentAcceptances;
+    }
+
+    /**
+     * @return Fraction of the accepted document proposals, NaN if there were none.
+     */
+    public double getDocumentAcceptanceRate() {
+        return (double) documentAcceptances / documentProposals;
+    }
+
+    public long getWordProposals() {
+        return wordProposals;
+    }
+
+    public long getWordAcceptances() {
+        return wordAcceptances;
+    }
+
+    /**
+     * @return Fraction of the accepted word proposals, NaN if there were none.
+     */
+    public double getWordAcceptanceRate() {
+        return (double) wordAcceptances / wordProposals;
+    }
+
+    public long getAliasTableRebuilds() {
+        return aliasTableRebuilds;
+    }
+
+    public long getSBucketHits() {
+        return sBucketHits;
+    }
+
+    public long getRBucketHits() {
+        return rBucketHits;
+    }
+
+    public long getQBucketHits() {
+        return qBucketHits;
+    }
+
+    public long getFTreeUpdates() {
+        return fTreeUpdates;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("iteration %d: %.0f tokens/s", iteration, getTokensPerSecond()));
+        if (allocatedBytes >= 0) {
+            builder.append(String.format(", %.1f MB allocated", allocatedBytes / 1e6));
+        }
+        if (documentProposals > 0) {
+            builder.append(String.format(", document acceptance %.3f", getDocumentAcceptanceRate()));
+        }
+        if (wordProposals > 0) {
+            builder.append(String.format(", word acceptance %.3f", getWordAcceptanceRate()));
+        }
+        if (aliasTableRebuilds > 0) {
+            builder.append(", ").append(aliasTableRebuilds).append(" alias table rebuilds");
+        }
+        long bucketHits = sBucketHits + rBucketHits + qBucketHits;
+        if (bucketHits > 0) {
+            builder.append(String.format(", s/r/q bucket hits %.3f/%.3f/%.3f", (double) sBucketHits / bucketHits,
+                    (double) rBucketHits / bucketHits, (double) qBucketHits / bucketHits));
+        }
+        if (fTreeUpdates > 0) {
+            builder.append(", ").append(fTreeUpdates).append(" F+ tree updates");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return Bytes that all live threads have allocated so far, or -1 if the
+     *         JVM can not measure it. The difference of two calls is the
+     *         allocation in between, as long as no thread terminated.
+     */
+    public static long getTotalAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+        if (!allocationBean.isThreadAllocatedMemorySupported() || !allocationBean.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : allocationBean.getThreadAllocatedBytes(bean.getAllThreadIds())) {
+            // -1 for threads that terminated in the meantime
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+}
@@ -1,119 +1,301 @@
 package tu.dortmund.lda.sampler;
 
+import tu.dortmund.lda.corpus.Corpus;
 import tu.dortmund.lda.data_structure.AliasTable;
+import tu.dortmund.lda.data_structure.CompactAliasTable;
+import tu.dortmund.lda.data_structure.DocTopicBuffer;
+import tu.dortmund.lda.data_structure.ProposalTable;
+import tu.dortmund.lda.data_structure.SparseAliasTable;
+import tu.dortmund.lda.metrics.IterationMetrics;
 
-import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
 
 public class AliasLda extends GibbsLda {
 
     static final int MH_STEPS = 2;
 
-    AliasTable[] aliasTables;
-    private ArrayList<Integer>[] nonzeroDocTopic;
+    /**
+     * The alias table of every word. It is an AliasTable by default, a
+     * CompactAliasTable with compact storage and a SparseAliasTable if
+     * {@link #setSparseAliasTables(boolean)} is enabled.
+     */
+    ProposalTable[] aliasTables;
+
+    /**
+     * The smoothing table that all sparse alias tables share, null for dense
+     * tables.
+     */
+    AliasTable smoothingTable;
+
+    private boolean useSparseAliasTables = false;
+    private boolean asyncAliasTableRebuilding = false;
+
+    /**
+     * Rebuilds the tables of the single threaded sweep in the background, null if
+     * the tables are rebuilt inline or if it was not created yet.
+     */
+    private AliasTableRebuilder<ProposalTable> rebuilder;
 
     public AliasLda(int[][] documents, int vocabularySize, int k) {
         super(documents, vocabularySize, k);
     }
 
-    @Override
-    public void initialize() {
-        super.initializeCountMatrices();
+    public AliasLda(Corpus documents, int vocabularySize, int k) {
+        super(documents, vocabularySize, k);
+    }
+
+    /**
+     * If enabled, the single threaded sweep does not rebuild a stale alias table
+     * itself. It requests the rebuild from a background thread and keeps
+     * sampling from the old table until the new one is swapped in. Disabled by
+     * default. The parallel sweep always rebuilds the tables after the merge.
+     */
+    public void setAsyncAliasTableRebuilding(boolean asyncAliasTableRebuilding) {
+        this.asyncAliasTableRebuilding = asyncAliasTableRebuilding;
+        this.rebuilder = null;
+    }
 
-        this.aliasTables = new AliasTable[vocabularySize];
+    /**
+     * If enabled, the alias table of a word only covers the topics with a nonzero
+     * count of the word. The part of the proposal that comes from beta is drawn
+     * from a single dense smoothing table, which all words share, so the tables
+     * need O(nonzero counts + numTopics) instead of O(vocabularySize * numTopics)
+     * memory. Disabled by default.
+     */
+    public void setSparseAliasTables(boolean sparseAliasTables) {
+        this.useSparseAliasTables = sparseAliasTables;
+        if (aliasTables != null) {
+            initializeSamplingStructures();
+        }
+    }
+
+    @Override
+    protected void initializeSamplingStructures() {
+        this.rebuilder = null;
+        this.smoothingTable = null;
+        if (useSparseAliasTables) {
+            this.smoothingTable = new AliasTable(numTopics);
+            updateSmoothingTable();
+        }
+        this.aliasTables = new ProposalTable[vocabularySize];
         for (int w = 0; w < vocabularySize; w++) {
-            aliasTables[w] = new AliasTable(numTopics);
+            aliasTables[w] = createAliasTable(w);
             updateAliasTable(w);
         }
+    }
 
-        // build up nonzero documents data structure
-        nonzeroDocTopic = new ArrayList[documents.length];
-        for (int document = 0; document < documents.length; document++) {
-            ArrayList<Integer> nonzeroList = new ArrayList<Integer>();
-            for (int topic = 0; topic < numTopics; topic++) {
-                if(matDocTopic[document][topic] > 0 && !nonzeroList.contains(topic)) {
-                    nonzeroList.add(topic);
-                }
-            }
-            nonzeroDocTopic[document] = nonzeroList;
+    private ProposalTable createAliasTable(int word) {
+        if (smoothingTable != null) {
+            return new SparseAliasTable(smoothingTable, beta[word]);
+        } else if (compactStorage) {
+            return new CompactAliasTable(numTopics);
         }
+        return new AliasTable(numTopics);
     }
 
     private void updateAliasTable(int word) {
-        AliasTable at = aliasTables[word];
+        ProposalTable at = aliasTables[word];
         at.resetSampleCount();
+        buildAliasTable(word, at);
+    }
+
+    private void buildAliasTable(int word, ProposalTable at) {
+        if (at instanceof SparseAliasTable) {
+            buildSparseAliasTable(word, (SparseAliasTable) at);
+        } else if (at instanceof CompactAliasTable) {
+            buildCompactAliasTable(word, (CompactAliasTable) at);
+        } else {
+            buildDenseAliasTable(word, (AliasTable) at);
+        }
+    }
+
+    private void buildDenseAliasTable(int word, AliasTable at) {
+        double psum = kernels.wordProbabilities(matTopicWord, word, vecTopic, alpha, beta[word], betaSum, null,
+                at.getUnnormalizedProbability());
+        at.setProbabilitySum(psum);
+        at.construct(kernels);
+    }
+
+    private void buildCompactAliasTable(int word, CompactAliasTable at) {
+        float[] p = at.getUnnormalizedProbability();
         double psum = 0.0;
         for (int t = 0; t < numTopics; t++) {
-            double tmp = alpha[t] * (matTopicWord[t][word] + beta[word]) / (vecTopic[t] + betaSum);
-            at.getUnnormalizedProbability()[t] = tmp;
-            psum += tmp;
+            p[t] = (float) (alpha[t] * (matTopicWord.get(t, word) + beta[word]) / (vecTopic[t] + betaSum));
+            psum += p[t];
         }
         at.setProbabilitySum(psum);
         at.construct();
     }
 
+    /**
+     * alpha_t * (n_tw + beta_w) / (n_t + betaSum) is split into the sparse part
+     * alpha_t * n_tw / (n_t + betaSum) and beta_w times the smoothing part.
+     */
+    private void buildSparseAliasTable(int word, SparseAliasTable at) {
+        at.clear();
+        at.setSmoothingWeight(beta[word]);
+        for (int t = 0; t < numTopics; t++) {
+            int count = matTopicWord.get(t, word);
+            if (count > 0) {
+                at.add(t, alpha[t] * count / (vecTopic[t] + betaSum));
+            }
+        }
+        at.construct();
+    }
+
+    private void updateSmoothingTable() {
+        smoothingTable.resetSampleCount();
+        double psum = kernels.smoothingProbabilities(vecTopic, alpha, betaSum,
+                smoothingTable.getUnnormalizedProbability());
+        smoothingTable.setProbabilitySum(psum);
+        smoothingTable.construct(kernels);
+    }
+
     @Override
     protected void fullCorpusSweep() {
+        if (!asyncAliasTableRebuilding) {
+            super.fullCorpusSweep();
+            return;
+        }
+        if (rebuilder == null) {
+            rebuilder = new AliasTableRebuilder<ProposalTable>(aliasTables, this::buildAliasTable,
+                    this::createAliasTable);
+        }
+        rebuilder.start();
+        try {
+            super.fullCorpusSweep();
+        } finally {
+            rebuilder.stop();
+        }
+        long rebuilds = rebuilder.takeNumRebuilds();
+        if (metrics != null) {
+            metrics.countAliasTableRebuilds((int) rebuilds);
+        }
+    }
+
+    /**
+     * Only the tables of the changed words are rebuilt. The other tables are
+     * slightly outdated since vecTopic changed, but they are still valid
+     * proposals and get rebuilt after numTopics samples anyway.
+     */
+    @Override
+    protected void updateSamplingStructures(boolean[] changedWords) {
+        if (smoothingTable != null) {
+            updateSmoothingTable();
+        }
+        for (int w = 0; w < vocabularySize; w++) {
+            if (changedWords[w]) {
+                updateAliasTable(w);
+            }
+        }
+    }
+
+    @Override
+    protected void mergeWorkers(GibbsLda[] workers, ExecutorService executor) {
+        super.mergeWorkers(workers, executor);
+        // the workers share the alias tables and therefore never rebuild them
+        if (smoothingTable != null) {
+            updateSmoothingTable();
+        }
+        forEachPartition(executor, vocabularySize, (partition, first, last) -> {
+            for (int w = first; w < last; w++) {
+                updateAliasTable(w);
+            }
+        });
+        if (metrics != null) {
+            metrics.countAliasTableRebuilds(vocabularySize);
+        }
+    }
+
+    @Override
+    protected void sampleDocuments(int firstDocument, int lastDocument) {
+        // a local copy lets the JIT compiler hoist the null checks out of the loops
+        IterationMetrics metrics = this.metrics;
+        AliasTableRebuilder<ProposalTable> rebuilder = isWorker ? null : this.rebuilder;
         double[] pdw = new double[numTopics];
+        // dense copy of the counts of the current document
+        DocTopicBuffer docTopic = new DocTopicBuffer(numTopics);
+
+        for (int document = firstDocument; document < lastDocument; document++) {
+            docTopic.load(matDocTopic, document);
 
-        for (int document = 0; document < documents.length; document++) {
-            for (int wi = 0; wi < documents[document].length; wi++) {
-                int word = documents[document][wi];
+            for (int wi = 0; wi < documents.getDocumentLength(document); wi++) {
+                int word = documents.getWord(document, wi);
                 int topic = matZ[document][wi];
 
-                decrementCountMatrices(document, word, topic);
-                if(matDocTopic[document][topic] == 0){
-                    nonzeroDocTopic[document].remove(Integer.valueOf(topic));
-                }
+                decrementCountMatrices(docTopic, word, topic);
 
-                ArrayList<Integer> nonzeroTopics = nonzeroDocTopic[document];
                 double pdwSum = 0.0;
-                for (int i = 0; i < nonzeroDocTopic[document].size(); i++) {
-                    int t = nonzeroTopics.get(i);
-                    pdwSum += matDocTopic[document][t] * (matTopicWord[t][word] + beta[word]) / (vecTopic[t] + betaSum);
+                for (int i = 0; i < docTopic.getNumNonzero(); i++) {
+                    int t = docTopic.getNonzeroTopic(i);
+                    pdwSum += docTopic.get(t) * (matTopicWord.get(t, word) + beta[word]) / (vecTopic[t] + betaSum);
                     pdw[i] = pdwSum;
                 }
 
-                AliasTable wordTable = aliasTables[word];
+                // the acceptance ratio must use the table that the proposal was drawn from
+                ProposalTable wordTable = rebuilder == null ? aliasTables[word] : rebuilder.get(word);
 
                 int newTopic = -1;
                 for (int mhStep = 0; mhStep < MH_STEPS; mhStep++) {
                     double u = random.nextDouble() * (pdwSum + wordTable.getProbabilitySum());
-                    if(u < pdwSum){
-                        int index = lowerBound(pdw, nonzeroTopics.size(), u);
-                        newTopic = nonzeroTopics.get(index);
+                    boolean documentProposal = u < pdwSum;
+                    if(documentProposal){
+                        int index = lowerBound(pdw, docTopic.getNumNonzero(), u);
+                        newTopic = docTopic.getNonzeroTopic(index);
                     }
                     else {
-                        if(wordTable.getSampleCount() >= numTopics) {
-                            updateAliasTable(word);
+                        if(!isWorker && wordTable.getSampleCount() >= numTopics) {
+                            if (rebuilder != null) {
+                                rebuilder.request(word);
+                            } else {
+                                updateAliasTable(word);
+                                if (metrics != null) {
+                                    metrics.countAliasTableRebuilds(1);
+                                }
+                            }
+                        }
+                        if (smoothingTable != null && !isWorker && smoothingTable.getSampleCount() >= numTopics) {
+                            updateSmoothingTable();
+                            if (metrics != null) {
+                                metrics.countAliasTableRebuilds(1);
+                            }
                         }
                         newTopic = wordTable.sample(this.random);
                     }
 
                     if(newTopic != topic) {
-                        double newTopicProbability = (matTopicWord[newTopic][word] + beta[word]) / (vecTopic[newTopic] + betaSum);
-                        double newFullProbability = (matDocTopic[document][newTopic] + alpha[topic]) * newTopicProbability;
-                        double newPdw = matDocTopic[document][newTopic] * newTopicProbability;
+                        double newTopicProbability = (matTopicWord.get(newTopic, word) + beta[word]) / (vecTopic[newTopic] + betaSum);
+                        double newFullProbability = (docTopic.get(newTopic) + alpha[topic]) * newTopicProbability;
+                        double newPdw = docTopic.get(newTopic) * newTopicProbability;
 
-                        double oldTopicProbability = (matTopicWord[topic][word] + beta[word]) / (vecTopic[topic] + betaSum);
-                        double oldFullProbability = (matDocTopic[document][topic] + alpha[topic]) * oldTopicProbability;
-                        double oldPdw = matDocTopic[document][topic] * oldTopicProbability;
+                        double oldTopicProbability = (matTopicWord.get(topic, word) + beta[word]) / (vecTopic[topic] + betaSum);
+                        double oldFullProbability = (docTopic.get(topic) + alpha[topic]) * oldTopicProbability;
+                        double oldPdw = docTopic.get(topic) * oldTopicProbability;
 
-                        double[] qw = wordTable.getUnnormalizedProbability();
-                        double acceptance = (newFullProbability * (oldPdw + qw[topic])) / (oldFullProbability * (newPdw + qw[newTopic]));
+                        double acceptance = (newFullProbability * (oldPdw + wordTable.getProbability(topic)))
+                                / (oldFullProbability * (newPdw + wordTable.getProbability(newTopic)));
 
                         if(random.nextDouble() < acceptance) {
                             topic = newTopic;
                         }
                     }
-                }
 
-                if(matDocTopic[document][topic] == 0){
-                    nonzeroDocTopic[document].add(topic);
+                    if (metrics != null) {
+                        // a proposal of the current topic is always accepted
+                        if (documentProposal) {
+                            metrics.countDocumentProposal(topic == newTopic);
+                        } else {
+                            metrics.countWordProposal(topic == newTopic);
+                        }
+                    }
                 }
-                incrementCountMatrices(document, word, topic);
+
+                incrementCountMatrices(docTopic, word, topic);
 
                 matZ[document][wi] = topic;
             }
+
+            docTopic.store(matDocTopic, document);
         }
     }
 }
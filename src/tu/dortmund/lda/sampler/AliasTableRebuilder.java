@@ -0,0 +1,264 @@
+package tu.dortmund.lda.sampler;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+import tu.dortmund.lda.data_structure.ProposalTable;
+
+/**
+ * Rebuilds stale alias tables in a background thread. Every word has a front
+ * table, which the sampler draws from, and a back buffer. The builder fills the
+ * back buffer of a requested word, constructs it and then swaps it with the
+ * front table, such that the sampler never waits for a construction and keeps
+ * drawing from the old table in the meantime. Since the alias tables are only
+ * Metropolis Hastings proposals, an outdated table still leads to a correct
+ * sampler, it just lowers the acceptance rate a bit.
+ *
+ * The old front table becomes the back buffer and is overwritten at the next
+ * rebuild of the word. A word has at most one pending request, which is only
+ * cleared after the swap, so the next rebuild is requested after numTopics
+ * further samples from the new table. Until then the sampler has long stopped
+ * using the old table, even if the builder falls behind.
+ *
+ * The requests are passed through a ring buffer of ints with a single producer,
+ * the sampler, and a single consumer, the builder, so a request neither
+ * allocates nor locks. The builder thread is reused for all sweeps: between
+ * two sweeps it waits, and only if no sweep starts for a while it terminates,
+ * such that a discarded model does not keep a thread alive.
+ */
+class AliasTableRebuilder<T extends ProposalTable> {
+
+    private static final VarHandle TABLES = MethodHandles.arrayElementVarHandle(ProposalTable[].class);
+    private static final VarHandle PENDING = MethodHandles.arrayElementVarHandle(boolean[].class);
+
+    /**
+     * Maximum number of pending requests, a power of two. If the builder falls
+     * behind, further requests are dropped and repeated after the next numTopics
+     * samples.
+     */
+    private static final int QUEUE_CAPACITY = 4096;
+
+    /**
+     * Time that the builder waits for the next sweep before it terminates.
+     */
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Fills and constructs the table of a word. It runs in the builder thread and
+     * reads the count matrices while the sampler updates them, so it sees a
+     * slightly outdated state.
+     */
+    interface TableBuilder<T> {
+        void build(int word, T table);
+    }
+
+    private final T[] tables;
+    private final T[] backBuffers;
+    private final TableBuilder<T> tableBuilder;
+    private final IntFunction<T> tableFactory;
+
+    /**
+     * The requested words. The sampler writes at tail, the builder reads at
+     * head, both only grow.
+     */
+    private final int[] requests;
+    private volatile long head;
+    private volatile long tail;
+
+    /**
+     * Whether a word is in the queue or being built.
+     */
+    private final boolean[] pending;
+
+    /**
+     * The builder thread, null if it has terminated. Guarded by this.
+     */
+    private volatile Thread builder;
+
+    /**
+     * True between start() and stop(). Guarded by this.
+     */
+    private volatile boolean active;
+
+    /**
+     * True while the builder waits for the next sweep. Guarded by this.
+     */
+    private boolean idle;
+
+    /**
+     * True while the builder is about to park because the queue is empty.
+     */
+    private volatile boolean waiting;
+
+    private long numRebuilds;
+
+    /**
+     * @param tables       The front tables, which are swapped in place.
+     * @param tableBuilder Fills and constructs a table.
+     * @param tableFactory Creates the back buffer of a word on its first rebuild.
+     */
+    AliasTableRebuilder(T[] tables, TableBuilder<T> tableBuilder, IntFunction<T> tableFactory) {
+        this.tables = tables;
+        this.backBuffers = Arrays.copyOf(tables, tables.length);
+        Arrays.fill(backBuffers, null);
+        this.tableBuilder = tableBuilder;
+        this.tableFactory = tableFactory;
+        this.requests = new int[QUEUE_CAPACITY];
+        this.pending = new boolean[tables.length];
+    }
+
+    /**
+     * Returns the current front table of a word. Use this method instead of
+     * reading the table array directly while the builder runs, such that the
+     * contents of a swapped in table are visible.
+     */
+    @SuppressWarnings("unchecked")
+    T get(int word) {
+        return (T) TABLES.getAcquire(tables, word);
+    }
+
+    /**
+     * Requests a rebuild of the table of a word, unless one is still pending.
+     * The sample count of the current table is reset, such that the word
+     * requests no further rebuild before numTopics more samples. Must only be
+     * called by the sampling thread between start() and stop().
+     */
+    void request(int word) {
+        get(word).resetSampleCount();
+        if ((boolean) PENDING.getAcquire(pending, word)) {
+            return;
+        }
+        long t = tail;
+        if (t - head == QUEUE_CAPACITY) {
+            return;
+        }
+        pending[word] = true;
+        requests[(int) t & (QUEUE_CAPACITY - 1)] = word;
+        tail = t + 1;
+        if (waiting) {
+            LockSupport.unpark(builder);
+        }
+    }
+
+    /**
+     * Lets the builder process requests, for example at the beginning of a sweep.
+     * The builder thread is started if it is not running.
+     */
+    synchronized void start() {
+        // the builder is idle or terminated, so it does not access the queue
+        head = 0;
+        tail = 0;
+        Arrays.fill(pending, false);
+        active = true;
+        if (builder == null) {
+            idle = false;
+            builder = new Thread(this::buildTables, "alias-table-rebuilder");
+            builder.setDaemon(true);
+            builder.start();
+        } else {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the builder has finished the table it is working on and lets
+     * it wait for the next sweep. Pending requests are dropped.
+     */
+    synchronized void stop() {
+        active = false;
+        LockSupport.unpark(builder);
+        try {
+            while (!idle) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while stopping the alias table rebuilder", e);
+        }
+    }
+
+    /**
+     * @return Number of tables that were swapped in since the last call. Only
+     *         valid while the builder is stopped.
+     */
+    long takeNumRebuilds() {
+        long rebuilds = numRebuilds;
+        numRebuilds = 0;
+        return rebuilds;
+    }
+
+    private void buildTables() {
+        try {
+            while (awaitSweep()) {
+                while (active) {
+                    long h = head;
+                    if (h == tail) {
+                        waiting = true;
+                        if (h == tail && active) {
+                            LockSupport.park(this);
+                        }
+                        waiting = false;
+                        continue;
+                    }
+                    int word = requests[(int) h & (QUEUE_CAPACITY - 1)];
+                    head = h + 1;
+                    build(word);
+                }
+            }
+        } catch (InterruptedException e) {
+            // the thread terminates
+        } finally {
+            synchronized (this) {
+                // after a failed build, stop() must not wait for this thread
+                if (builder == Thread.currentThread()) {
+                    builder = null;
+                    idle = true;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the builder as idle and waits until the next sweep starts.
+     *
+     * @return False if no sweep started within the idle timeout.
+     */
+    private synchronized boolean awaitSweep() throws InterruptedException {
+        if (active) {
+            return true;
+        }
+        idle = true;
+        notifyAll();
+        long deadline = System.nanoTime() + IDLE_TIMEOUT_NANOS;
+        while (!active) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                // the next start() creates a new thread
+                builder = null;
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        idle = false;
+        return true;
+    }
+
+    private void build(int word) {
+        T front = get(word);
+        T back = backBuffers[word];
+        if (back == null) {
+            back = tableFactory.apply(word);
+        }
+        tableBuilder.build(word, back);
+        back.resetSampleCount();
+        TABLES.setRelease(tables, word, back);
+        backBuffers[word] = front;
+        numRebuilds++;
+        PENDING.setRelease(pending, word, false);
+    }
+}
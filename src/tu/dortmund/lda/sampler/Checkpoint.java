@@ -0,0 +1,245 @@
+package tu.dortmund.lda.sampler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import tu.dortmund.lda.corpus.Corpus;
+
+/**
+ * Binary checkpoint of the sampler state. The file is written with NIO in
+ * little endian byte order:
+ *
+ * <pre>
+ * header  int magic, int version, int numTopics, int vocabularySize,
+ *         int numDocuments, int bitsPerTopic, long numTokens, long seed
+ * priors  double alphaSum, double[numTopics] alpha, double betaSum,
+ *         double[vocabularySize] beta
+ * matZ    the topic assignments in document order, bitsPerTopic bits each,
+ *         packed into longs
+ * </pre>
+ *
+ * The count matrices are not stored, since they can be recomputed from matZ
+ * in a single pass, which is cheaper than writing and reading numTopics x
+ * vocabularySize counts.
+ */
+class Checkpoint {
+
+    private static final int MAGIC = 0x4C444153;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final int[][] matZ;
+    private final double[] alpha;
+    private final double alphaSum;
+    private final double[] beta;
+    private final double betaSum;
+    private final long seed;
+
+    private Checkpoint(int[][] matZ, double[] alpha, double alphaSum, double[] beta, double betaSum, long seed) {
+        this.matZ = matZ;
+        this.alpha = alpha;
+        this.alphaSum = alphaSum;
+        this.beta = beta;
+        this.betaSum = betaSum;
+        this.seed = seed;
+    }
+
+    /**
+     * Writes the checkpoint into a temporary file first and then replaces the
+     * file at the given path, such that a crash during the write never destroys
+     * the previous checkpoint.
+     */
+    static void write(Path path, GibbsLda model, long seed) throws IOException {
+        int[][] matZ = model.matZ;
+        int bitsPerTopic = bitsPerTopic(model.numTopics);
+
+        Path directory = path.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(model.numTopics).putInt(model.vocabularySize);
+                buffer.putInt(matZ.length).putInt(bitsPerTopic).putLong(model.documents.getNumTokens()).putLong(seed);
+                // the sums are stored as well, since summing up again can give a slightly different result
+                putLong(channel, buffer, Double.doubleToLongBits(model.alphaSum));
+                for (double a : model.alpha) {
+                    putLong(channel, buffer, Double.doubleToLongBits(a));
+                }
+                putLong(channel, buffer, Double.doubleToLongBits(model.betaSum));
+                for (double b : model.beta) {
+                    putLong(channel, buffer, Double.doubleToLongBits(b));
+                }
+
+                long word = 0;
+                int numBits = 0;
+                for (int[] document : matZ) {
+                    for (int topic : document) {
+                        word |= (long) topic << numBits;
+                        numBits += bitsPerTopic;
+                        if (numBits >= 64) {
+                            putLong(channel, buffer, word);
+                            numBits -= 64;
+                            // the bits of the topic that did not fit into the last word
+                            word = numBits > 0 ? (long) topic >>> (bitsPerTopic - numBits) : 0;
+                        }
+                    }
+                }
+                if (numBits > 0) {
+                    putLong(channel, buffer, word);
+                }
+                flush(channel, buffer);
+                channel.force(false);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Reads a checkpoint and checks that it belongs to the given corpus and model
+     * dimensions.
+     */
+    static Checkpoint read(Path path, Corpus documents, int numTopics, int vocabularySize) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.limit(0);
+            fill(channel, buffer, HEADER_SIZE);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(path + " is not a checkpoint file");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(path + " has the unsupported checkpoint version " + version);
+            }
+            int fileNumTopics = buffer.getInt();
+            int fileVocabularySize = buffer.getInt();
+            int numDocuments = buffer.getInt();
+            int bitsPerTopic = buffer.getInt();
+            long numTokens = buffer.getLong();
+            long seed = buffer.getLong();
+            if (fileNumTopics != numTopics || fileVocabularySize != vocabularySize
+                    || numDocuments != documents.getNumDocuments() || numTokens != documents.getNumTokens()) {
+                throw new IllegalArgumentException("The checkpoint with " + fileNumTopics + " topics, "
+                        + fileVocabularySize + " words, " + numDocuments + " documents and " + numTokens
+                        + " tokens does not belong to this model");
+            }
+
+            double alphaSum = Double.longBitsToDouble(getLong(channel, buffer));
+            double[] alpha = new double[numTopics];
+            for (int i = 0; i < alpha.length; i++) {
+                alpha[i] = Double.longBitsToDouble(getLong(channel, buffer));
+            }
+            double betaSum = Double.longBitsToDouble(getLong(channel, buffer));
+            double[] beta = new double[vocabularySize];
+            for (int i = 0; i < beta.length; i++) {
+                beta[i] = Double.longBitsToDouble(getLong(channel, buffer));
+            }
+
+            long mask = (1L << bitsPerTopic) - 1;
+            int[][] matZ = new int[numDocuments][];
+            long word = 0;
+            int numBits = 0;
+            for (int document = 0; document < numDocuments; document++) {
+                matZ[document] = new int[documents.getDocumentLength(document)];
+                for (int token = 0; token < matZ[document].length; token++) {
+                    if (numBits == 0) {
+                        word = getLong(channel, buffer);
+                        numBits = 64;
+                    }
+                    long topic = word & mask;
+                    if (numBits < bitsPerTopic) {
+                        // the remaining bits of the topic are in the next word
+                        word = getLong(channel, buffer);
+                        topic |= (word << numBits) & mask;
+                        word >>>= bitsPerTopic - numBits;
+                        numBits += 64 - bitsPerTopic;
+                    } else {
+                        word >>>= bitsPerTopic;
+                        numBits -= bitsPerTopic;
+                    }
+                    if (topic >= numTopics) {
+                        throw new IOException(path + " contains the invalid topic " + topic);
+                    }
+                    matZ[document][token] = (int) topic;
+                }
+            }
+            return new Checkpoint(matZ, alpha, alphaSum, beta, betaSum, seed);
+        }
+    }
+
+    /**
+     * @return Number of bits that are needed to store the topics 0 to numTopics - 1.
+     */
+    private static int bitsPerTopic(int numTopics) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(numTopics - 1));
+    }
+
+    private static void putLong(FileChannel channel, ByteBuffer buffer, long value) throws IOException {
+        if (buffer.remaining() < Long.BYTES) {
+            flush(channel, buffer);
+        }
+        buffer.putLong(value);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static long getLong(FileChannel channel, ByteBuffer buffer) throws IOException {
+        fill(channel, buffer, Long.BYTES);
+        return buffer.getLong();
+    }
+
+    /**
+     * Makes sure that at least the given number of bytes can be read from the
+     * buffer.
+     */
+    private static void fill(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Unexpected end of the checkpoint file");
+            }
+        }
+        buffer.flip();
+    }
+
+    int[][] getMatZ() {
+        return matZ;
+    }
+
+    double[] getAlpha() {
+        return alpha;
+    }
+
+    double getAlphaSum() {
+        return alphaSum;
+    }
+
+    double[] getBeta() {
+        return beta;
+    }
+
+    double getBetaSum() {
+        return betaSum;
+    }
+
+    long getSeed() {
+        return seed;
+    }
+}
@@ -0,0 +1,68 @@
+package tu.dortmund.lda.sampler;
+
+import tu.dortmund.lda.convergence.ModelSnapshot;
+
+/**
+ * Snapshot of a model for the convergence check. It wraps a shallow copy of the
+ * model with its own copies of the count matrices, so the log likelihood can be
+ * computed with the same code as for the model itself.
+ */
+class CountSnapshot implements ModelSnapshot {
+
+    private final GibbsLda copy;
+    private final long iteration;
+    private double logLikelihood;
+
+    /**
+     * @param copy          The copy of the model. It must not share any count
+     *                      matrix with the model.
+     * @param iteration     Number of finished iterations.
+     * @param logLikelihood The log likelihood if it is already known, otherwise
+     *                      NaN.
+     */
+    CountSnapshot(GibbsLda copy, long iteration, double logLikelihood) {
+        this.copy = copy;
+        this.iteration = iteration;
+        this.logLikelihood = logLikelihood;
+    }
+
+    @Override
+    public long getIteration() {
+        return iteration;
+    }
+
+    @Override
+    public double getLogLikelihood() {
+        if (Double.isNaN(logLikelihood)) {
+            logLikelihood = copy.getDocumentLogLikelihood() + copy.getWordLogLikelihood();
+        }
+        return logLikelihood;
+    }
+
+    @Override
+    public int[][] getTopWords(int n) {
+        int numTopics = copy.numTopics;
+        n = Math.min(n, copy.vocabularySize);
+        int[][] topWords = new int[numTopics][n];
+        int[] counts = new int[n];
+        for (int topic = 0; topic < numTopics; topic++) {
+            // insertion into a sorted list of the n largest counts, ties keep the smaller word
+            int size = 0;
+            for (int word = 0; word < copy.vocabularySize; word++) {
+                int count = copy.matTopicWord.get(topic, word);
+                if (size == n && count <= counts[n - 1]) {
+                    continue;
+                }
+                int position = size < n ? size++ : n - 1;
+                while (position > 0 && counts[position - 1] < count) {
+                    counts[position] = counts[position - 1];
+                    topWords[topic][position] = topWords[topic][position - 1];
+                    position--;
+                }
+                counts[position] = count;
+                topWords[topic][position] = word;
+            }
+        }
+        return topWords;
+    }
+}
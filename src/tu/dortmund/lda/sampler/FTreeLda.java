@@ -1,130 +1,294 @@
 package tu.dortmund.lda.sampler;
 
+import tu.dortmund.lda.corpus.Corpus;
 import tu.dortmund.lda.data_structure.FPlusTree;
+import tu.dortmund.lda.data_structure.WordOccurrenceIndex;
+import tu.dortmund.lda.metrics.IterationMetrics;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 public class FTreeLda extends GibbsLda {
 
-    class DocToken {
-        private int documentID;
-        private int tokenID;
+    /**
+     * Number of tokens after which a worker of the parallel sweep reconciles its
+     * copy of vecTopic with the other workers.
+     */
+    private static final int RECONCILIATION_INTERVAL = 4096;
 
-        public DocToken(int documentID, int tokenID) {
-            this.documentID = documentID;
-            this.tokenID = tokenID;
+    /**
+     * The occurrences of each term in the corpus. This makes it possible to
+     * iterate through the corpus term by term instead of word token by word token.
+     */
+    private WordOccurrenceIndex wordOccurrences;
+
+    public FTreeLda(int[][] documents, int vocabularySize, int k) {
+        super(documents, vocabularySize, k);
+    }
+
+    public FTreeLda(Corpus documents, int vocabularySize, int k) {
+        super(documents, vocabularySize, k);
+    }
+
+    @Override
+    protected void initializeSamplingStructures() {
+        wordOccurrences = new WordOccurrenceIndex(documents, vocabularySize);
+    }
+
+    @Override
+    public void setOutOfCore(Path directory, int documentsPerBlock) {
+        if (directory != null) {
+            throw new UnsupportedOperationException("FTreeLda samples word by word and can not stream the documents in blocks");
         }
+        super.setOutOfCore(directory, documentsPerBlock);
+    }
 
-        public int getDocumentID() {
-            return documentID;
+    @Override
+    protected void fullCorpusSweep() {
+        double[] p = new double[numTopics + 1];
+        double[] q = new double[numTopics];
+        double[] q2 = new double[numTopics];
+        int[] nonzeroTopics = new int[numTopics + 1];
+        FPlusTree fTree = new FPlusTree(numTopics);
+
+        for (int word = 0; word < vocabularySize; word++) {
+            kernels.wordProbabilities(matTopicWord, word, vecTopic, alpha, beta[word], betaSum, q2, q);
+            fTree.build(q, kernels);
+            sampleOccurrences(word, wordOccurrences.getFirst(word), wordOccurrences.getEnd(word), fTree, q2, p,
+                    nonzeroTopics);
+        }
+    }
+
+    /**
+     * Samples the given occurrences of a word. fTree and q2 must hold the
+     * probabilities of the word for the current counts.
+     */
+    private void sampleOccurrences(int word, int firstOccurrence, int endOccurrence, FPlusTree fTree, double[] q2,
+            double[] p, int[] nonzeroTopics) {
+        for (int occurrence = firstOccurrence; occurrence < endOccurrence; occurrence++) {
+            int document = wordOccurrences.getDocument(occurrence);
+            int token = wordOccurrences.getToken(occurrence);
+            int topic = matZ[document][token];
+
+            super.decrementCountMatrices(document, word, topic);
+
+            q2[topic] = (matTopicWord.get(topic, word) + beta[word]) / (vecTopic[topic] + betaSum);
+            fTree.update(topic, alpha[topic] * q2[topic]);
+
+            // empty slots have a zero count and are overwritten by the next slot
+            int numNonzero = 0;
+            double pSum = 0.0;
+            for (int slot = 0; slot < matDocTopic.getNumSlots(document); slot++) {
+                int t = matDocTopic.getTopic(document, slot);
+                int count = matDocTopic.getCount(document, slot);
+                pSum += count * q2[t];
+                p[numNonzero] = pSum;
+                nonzeroTopics[numNonzero] = t;
+                numNonzero += count > 0 ? 1 : 0;
+            }
+
+            double qSum = fTree.getProbabilitySum();
+
+            double u = random.nextDouble() * (pSum + qSum);
+            if(u < pSum){
+                int index = lowerBound(p, numNonzero, u) ;
+                topic = nonzeroTopics[index];
+            } else {
+                topic = fTree.sample(random);
+            }
+
+            super.incrementCountMatrices(document, word, topic);
+
+            q2[topic] = (matTopicWord.get(topic, word) + beta[word]) / (vecTopic[topic] + betaSum);
+            fTree.update(topic, alpha[topic] * q2[topic]);
+
+            matZ[document][token] = topic;
         }
 
-        public int getTokenID() {
-            return tokenID;
+        if (metrics != null) {
+            metrics.countFTreeUpdates(2 * (endOccurrence - firstOccurrence));
         }
     }
 
-    private ArrayList<Integer>[] nonzeroDocTopic;
-    private ArrayList<DocToken>[] wordOccurences;
+    /**
+     * The right to sample a word. Whoever holds the column of a word is the only
+     * thread that changes the counts of the word in matTopicWord, so the counts
+     * need neither locks nor atomic updates. Handing the column over through a
+     * queue makes the changes visible to the next owner.
+     */
+    private static class WordColumn {
+        private final int word;
+        private int numVisits;
 
-    public FTreeLda(int[][] documents, int vocabularySize, int k) {
-        super(documents, vocabularySize, k);
+        WordColumn(int word) {
+            this.word = word;
+        }
     }
 
-    @Override
-    public void initialize() {
-        super.initializeCountMatrices();
-
-        // build up nonzero documents data structure
-        nonzeroDocTopic = new ArrayList[documents.length];
-        for (int document = 0; document < documents.length; document++) {
-            ArrayList<Integer> nonzeroList = new ArrayList<Integer>();
-            for (int topic = 0; topic < numTopics; topic++) {
-                if(matDocTopic[document][topic] > 0 && !nonzeroList.contains(topic)) {
-                    nonzeroList.add(topic);
-                }
+    /**
+     * The state that the workers of a word partitioned sweep share.
+     */
+    private static class ColumnExchange {
+
+        /**
+         * Tells a waiting worker that the sweep is over.
+         */
+        private static final WordColumn DONE = new WordColumn(-1);
+
+        private final List<LinkedBlockingQueue<WordColumn>> queues;
+        private final AtomicInteger remainingColumns;
+        private final AtomicIntegerArray topicCounts;
+
+        ColumnExchange(int numThreads, int vocabularySize, int[] vecTopic) {
+            queues = new ArrayList<LinkedBlockingQueue<WordColumn>>(numThreads);
+            for (int i = 0; i < numThreads; i++) {
+                queues.add(new LinkedBlockingQueue<WordColumn>());
+            }
+            for (int word = 0; word < vocabularySize; word++) {
+                queues.get(word % numThreads).offer(new WordColumn(word));
+            }
+            remainingColumns = new AtomicInteger(vocabularySize);
+            topicCounts = new AtomicIntegerArray(vecTopic);
+            if (vocabularySize == 0) {
+                finish();
             }
-            nonzeroDocTopic[document] = nonzeroList;
         }
 
-        /*
-         * Build up a data structure that contains the occurences of each term in the
-         * corpus. This makes it possible to iterate through the corpus term by term
-         * instead of word token by word token. The data structure consumes a lot of
-         * memory and could be avoided if the corpus representation would be different.
-         * However for the sake of simplicity this data structure is used.
+        /**
+         * Wakes up all workers and lets them leave the sweep.
          */
-        wordOccurences = new ArrayList[vocabularySize];
-        for (int word = 0; word < vocabularySize; word++) {
-            wordOccurences[word] = new ArrayList<DocToken>();
-        }
-        for (int document = 0; document < documents.length; document++) {
-            for (int token = 0; token < documents[document].length; token++) {
-                int word = documents[document][token];
-                DocToken dt = new DocToken(document, token);
-                wordOccurences[word].add(dt);
+        void finish() {
+            for (LinkedBlockingQueue<WordColumn> queue : queues) {
+                queue.offer(DONE);
             }
         }
-
     }
 
+    /**
+     * Multi-threaded sweep of F+Nomad LDA. Every worker owns a contiguous range of
+     * documents and has its own queue of word columns. A worker takes a column
+     * from its queue, samples the occurrences of the word in its documents and
+     * passes the column on to the next worker, until every column has visited
+     * every worker. A worker with an empty queue blocks instead of spinning, so
+     * it does not take the processor away from the workers that hold columns.
+     * matTopicWord is shared, but every row is only changed by the owner of its
+     * column. Only vecTopic, the sum over all words, is changed by all workers
+     * at the same time. Every worker samples against a local copy of it and
+     * reconciles the copy with the global counts every few thousand tokens.
+     */
     @Override
-    protected void fullCorpusSweep() {
-        double[] p = new double[numTopics];
+    protected void parallelCorpusSweep(ExecutorService executor) {
+        ColumnExchange exchange = new ColumnExchange(numThreads, vocabularySize, vecTopic);
+        FTreeLda[] workers = new FTreeLda[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            workers[i] = createColumnWorker();
+        }
+        forEachPartition(executor, documents.getNumDocuments(), (partition, first, last) -> {
+            workers[partition].sampleColumns(exchange, partition, first, last);
+        });
+        for (int topic = 0; topic < numTopics; topic++) {
+            vecTopic[topic] = exchange.topicCounts.get(topic);
+        }
+        mergeColumnWorkers(workers);
+    }
+
+    /**
+     * Like {@link #createWorker()}, but the worker shares matTopicWord in every
+     * parallel mode and only gets its own copy of vecTopic.
+     */
+    private FTreeLda createColumnWorker() {
+        FTreeLda worker;
+        try {
+            worker = (FTreeLda) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        worker.isWorker = true;
+        worker.random = random.split();
+        worker.metrics = metrics == null ? null : new IterationMetrics();
+        worker.vecTopic = vecTopic.clone();
+        worker.atomicUpdates = false;
+        worker.trackLogLikelihood = false;
+        return worker;
+    }
+
+    private void sampleColumns(ColumnExchange exchange, int partition, int firstDocument, int lastDocument) {
+        double[] p = new double[numTopics + 1];
         double[] q = new double[numTopics];
         double[] q2 = new double[numTopics];
+        int[] nonzeroTopics = new int[numTopics + 1];
+        FPlusTree fTree = new FPlusTree(numTopics);
+        // vecTopic at the last reconciliation
+        int[] reconciledTopics = vecTopic.clone();
+        int numUnreconciled = 0;
 
-        for (int word = 0; word < wordOccurences.length; word++) {
-            for (int topic = 0; topic < numTopics; topic++) {
-                q2[topic] = (matTopicWord[topic][word] + beta[word]) / (vecTopic[topic] + betaSum);
-                q[topic] = alpha[topic] * q2[topic];
-            }
-            FPlusTree ftree = new FPlusTree(q.length);
-            ftree.build(q);
-            FPlusTree fTree = ftree;
-
-            for (int occurrence = 0; occurrence < wordOccurences[word].size(); occurrence++) {
-                DocToken dt = wordOccurences[word].get(occurrence);
-                int document = dt.documentID;
-                int token = dt.tokenID;
-                int topic = matZ[document][token];
-
-                super.decrementCountMatrices(document, word, topic);
-                if(matDocTopic[document][topic] == 0){
-                    nonzeroDocTopic[document].remove(Integer.valueOf(topic));
+        LinkedBlockingQueue<WordColumn> queue = exchange.queues.get(partition);
+        LinkedBlockingQueue<WordColumn> nextQueue = exchange.queues.get((partition + 1) % numThreads);
+        try {
+            while (true) {
+                WordColumn column = queue.take();
+                if (column == ColumnExchange.DONE) {
+                    break;
                 }
-
-                q2[topic] = (matTopicWord[topic][word] + beta[word]) / (vecTopic[topic] + betaSum);
-                fTree.update(topic, alpha[topic] * q2[topic]);
-
-                ArrayList<Integer> nonzeroTopics = nonzeroDocTopic[document];
-                double pSum = 0.0;
-                for (int i = 0; i < nonzeroDocTopic[document].size(); i++) {
-                    int t = nonzeroTopics.get(i);
-                    pSum += matDocTopic[document][t] * q2[t];
-                    p[i] = pSum;
+                int word = column.word;
+                int firstOccurrence = wordOccurrences.findDocument(word, firstDocument);
+                int endOccurrence = wordOccurrences.findDocument(word, lastDocument);
+                if (firstOccurrence < endOccurrence) {
+                    kernels.wordProbabilities(matTopicWord, word, vecTopic, alpha, beta[word], betaSum, q2, q);
+                    fTree.build(q, kernels);
+                    sampleOccurrences(word, firstOccurrence, endOccurrence, fTree, q2, p, nonzeroTopics);
+                    numUnreconciled += endOccurrence - firstOccurrence;
                 }
-
-                double qSum = fTree.getProbabilitySum();
-
-                double u = random.nextDouble() * (pSum + qSum);
-                if(u < pSum){
-                    int index = lowerBound(p, nonzeroTopics.size(), u) ;
-                    topic = nonzeroTopics.get(index);
-                } else {
-                    topic = fTree.sample(random);
+                if (++column.numVisits < numThreads) {
+                    nextQueue.offer(column);
+                } else if (exchange.remainingColumns.decrementAndGet() == 0) {
+                    exchange.finish();
                 }
-
-                if(matDocTopic[document][topic] == 0){
-                    nonzeroDocTopic[document].add(topic);
+                if (numUnreconciled >= RECONCILIATION_INTERVAL) {
+                    reconcileTopicCounts(exchange.topicCounts, reconciledTopics);
+                    numUnreconciled = 0;
                 }
-                super.incrementCountMatrices(document, word, topic);
+            }
+        } catch (InterruptedException e) {
+            exchange.finish();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a word column", e);
+        } catch (RuntimeException | Error e) {
+            // the columns of this worker never come back, so the others would wait forever
+            exchange.finish();
+            throw e;
+        }
+        reconcileTopicCounts(exchange.topicCounts, reconciledTopics);
+    }
 
-                q2[topic] = (matTopicWord[topic][word] + beta[word]) / (vecTopic[topic] + betaSum);
-                fTree.update(topic, alpha[topic] * q2[topic]);
+    /**
+     * Adds the local changes of vecTopic since the last reconciliation to the
+     * global counts and replaces the local copy with the global counts.
+     */
+    private void reconcileTopicCounts(AtomicIntegerArray topicCounts, int[] reconciledTopics) {
+        for (int topic = 0; topic < numTopics; topic++) {
+            int delta = vecTopic[topic] - reconciledTopics[topic];
+            int count = delta == 0 ? topicCounts.get(topic) : topicCounts.addAndGet(topic, delta);
+            vecTopic[topic] = count;
+            reconciledTopics[topic] = count;
+        }
+    }
 
-                matZ[document][token] = topic;
+    /**
+     * The workers do not track the log likelihood, since they sample against
+     * their own copies of vecTopic. It is computed again when it is needed.
+     */
+    private void mergeColumnWorkers(FTreeLda[] workers) {
+        if (metrics != null) {
+            for (FTreeLda worker : workers) {
+                metrics.merge(worker.metrics);
             }
         }
+        logLikelihoodValid = false;
     }
 }
@@ -1,14 +1,59 @@
 package tu.dortmund.lda.sampler;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.SplittableRandom;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import tu.dortmund.lda.LdaModel;
+import tu.dortmund.lda.ParallelMode;
+import tu.dortmund.lda.convergence.ConvergenceCriterion;
+import tu.dortmund.lda.convergence.ModelSnapshot;
+import tu.dortmund.lda.corpus.ArrayCorpus;
+import tu.dortmund.lda.corpus.Corpus;
+import tu.dortmund.lda.corpus.MappedCorpus;
+import tu.dortmund.lda.corpus.StreamingCorpus;
+import tu.dortmund.lda.data_structure.AdaptiveTopicWordMatrix;
+import tu.dortmund.lda.data_structure.DocTopicBuffer;
+import tu.dortmund.lda.data_structure.MappedTopicAssignments;
+import tu.dortmund.lda.data_structure.MappedTopicWordMatrix;
+import tu.dortmund.lda.data_structure.SparseDocTopicMatrix;
+import tu.dortmund.lda.data_structure.TopicWordMatrix;
+import tu.dortmund.lda.data_structure.WordMajorTopicWordMatrix;
+import tu.dortmund.lda.evaluation.LogGammaTable;
+import tu.dortmund.lda.evaluation.ParallelSum;
+import tu.dortmund.lda.kernel.Kernels;
+import tu.dortmund.lda.metrics.IterationEvent;
+import tu.dortmund.lda.metrics.IterationListener;
+import tu.dortmund.lda.metrics.IterationMetrics;
 
 /**
  * The normal Gibbs Sampling algorithm
  */
-public class GibbsLda implements LdaModel {
+public class GibbsLda implements LdaModel, Cloneable {
+
+    private static final VarHandle INT_ARRAY = MethodHandles.arrayElementVarHandle(int[].class);
+
+    /**
+     * Number of documents and words that a task of the parallel log likelihood
+     * computation processes.
+     */
+    private static final int DOCUMENT_GRAIN = 1024;
+    private static final int WORD_GRAIN = 256;
+
+    private static final String TOPIC_WORD_FILE = "topic-word.bin";
+    private static final String TOPICS_FILE = "topics.bin";
 
     protected final int vocabularySize;
     protected final int numTopics;
@@ -19,13 +64,9 @@ public class GibbsLda implements LdaModel {
     protected double betaSum;
 
     /**
-     * All existing documents. A single document is represented as an integer array.
-     * Each term in the vocabulary is represented by a unique integer. If for
-     * example a document is [1,1,2,3] this indicates that the document contains 4
-     * word tokes, where the first word appears twice in the document. This
-     * representation is therefore NOT a Bag Of Words (BOW) format.
+     * All existing documents, see {@link Corpus} for the representation.
      */
-    protected int[][] documents;
+    protected Corpus documents;
 
     /**
      * Holds the topic assignment for each word token in each document. It therefore
@@ -35,19 +76,21 @@ public class GibbsLda implements LdaModel {
 
     /**
      * Count matrix that holds the number of times a word is assinged to a topic
-     * throughout the whole corpus. For example matTopicWord[i][j] tells how often
-     * word j is assigned to topic i. The matrix dimensions are therefore: number of
-     * topics X vocabulary size.
+     * throughout the whole corpus. For example matTopicWord.get(i, j) tells how
+     * often word j is assigned to topic i. The matrix dimensions are therefore:
+     * number of topics X vocabulary size. The counts are stored in word major
+     * order, such that iterating over all topics of a word is a sequential scan.
      */
-    protected int[][] matTopicWord;
+    protected TopicWordMatrix matTopicWord;
 
     /**
      * Count matrix that holds the number of times a topic is used inside a
-     * document. For example matDocTopic[i][j] tells how often a word token inside
-     * document i is assigned to topic j. The matrix dimensions are therefore:
-     * number of documents X number of topics.
+     * document. For example matDocTopic.get(i, j) tells how often a word token
+     * inside document i is assigned to topic j. The matrix dimensions are
+     * therefore: number of documents X number of topics. Only the nonzero counts
+     * are stored.
      */
-    protected int[][] matDocTopic;
+    protected SparseDocTopicMatrix matDocTopic;
 
     /**
      * Count vector that holds the total assignments of each topic throughout the
@@ -62,6 +105,90 @@ public class GibbsLda implements LdaModel {
 
     protected SplittableRandom random;
 
+    /**
+     * Number of threads that are used to run the sampling algorithm. If more than
+     * one thread is used, the corpus is sampled with the approximate distributed
+     * LDA (AD-LDA) scheme, see {@link #parallelCorpusSweep(ExecutorService)}.
+     */
+    protected int numThreads = 1;
+
+    /**
+     * Determines how the threads share the count matrices if numThreads is
+     * greater than one.
+     */
+    protected ParallelMode parallelMode = ParallelMode.DATA_PARALLEL;
+
+    /**
+     * If true, matTopicWord and vecTopic are shared with other threads and have to
+     * be updated atomically.
+     */
+    protected boolean atomicUpdates = false;
+
+    /**
+     * If true, the count matrices and the sampler specific data structures use
+     * narrow types, see {@link #setCompactStorage(boolean)}.
+     */
+    protected boolean compactStorage = false;
+
+    /**
+     * The directory of the out of core storage and the number of documents per
+     * block, see {@link #setOutOfCore(Path, int)}. null if the model is kept in
+     * the heap.
+     */
+    private Path outOfCoreDirectory;
+    private int documentsPerBlock;
+
+    /**
+     * The topic assignments of all tokens if the model was initialized out of
+     * core, null otherwise. matZ and matDocTopic then only hold the documents of
+     * the block that is currently sampled.
+     */
+    protected MappedTopicAssignments topicAssignments;
+
+    /**
+     * The dense loops over all topics, see {@link #setKernels(Kernels)}.
+     */
+    protected Kernels kernels = Kernels.getDefault();
+
+    /**
+     * True for the worker copies that are created by {@link #createWorker()}.
+     * Workers must not modify data structures that are shared with other workers.
+     */
+    protected boolean isWorker = false;
+
+    /**
+     * If true, the log likelihood is updated with every change of the count
+     * matrices, see {@link #setLogLikelihoodTracking(boolean)}.
+     */
+    protected boolean trackLogLikelihood = false;
+
+    /**
+     * The tracked log likelihood, split into the part that depends on the
+     * document topic counts and the part that depends on the topic word counts.
+     * Workers start both parts at zero and only accumulate their changes.
+     */
+    protected double documentLogLikelihood;
+    protected double wordLogLikelihood;
+
+    /**
+     * False if the tracked log likelihood needs to be recomputed from the count
+     * matrices, for example because the priors changed.
+     */
+    protected boolean logLikelihoodValid = false;
+
+    private final List<IterationListener> listeners = new CopyOnWriteArrayList<IterationListener>();
+
+    /**
+     * Counters of the current iteration. Null if no listener and no JFR recording
+     * is interested in them, the samplers only count if it is not null.
+     */
+    protected IterationMetrics metrics;
+
+    /**
+     * Number of iterations since the model was created.
+     */
+    private long iteration = 0;
+
     /**
      * Constructor. Sets some default values for alpha and beta prior.
      * 
@@ -70,6 +197,17 @@ public class GibbsLda implements LdaModel {
      * @param numTopics      Number of topics that should be learned.
      */
     public GibbsLda(int[][] documents, int vocabularySize, int numTopics) {
+        this(new ArrayCorpus(documents), vocabularySize, numTopics);
+    }
+
+    /**
+     * Constructor. Sets some default values for alpha and beta prior.
+     * 
+     * @param documents      The documents, for example a {@link MappedCorpus}.
+     * @param vocabularySize Size of the vocabulary.
+     * @param numTopics      Number of topics that should be learned.
+     */
+    public GibbsLda(Corpus documents, int vocabularySize, int numTopics) {
         this.documents = documents;
         this.vocabularySize = vocabularySize;
         this.numTopics = numTopics;
@@ -90,68 +228,616 @@ public class GibbsLda implements LdaModel {
     @Override
     public void initialize() {
         this.initializeCountMatrices();
+        this.initializeSamplingStructures();
     }
 
     /**
-     * Initializes the count matrices. This may allocate a lot of main memory.
+     * Assigns a random topic to every word token and initializes the count
+     * matrices. This may allocate a lot of main memory.
      */
     protected void initializeCountMatrices() {
-        matTopicWord = new int[numTopics][vocabularySize];
-        matDocTopic = new int[documents.length][numTopics];
+        topicAssignments = null;
+        if (outOfCoreDirectory != null) {
+            initializeOutOfCore();
+            return;
+        }
+        matZ = new int[documents.getNumDocuments()][];
+        for (int document = 0; document < documents.getNumDocuments(); document++) {
+            matZ[document] = new int[documents.getDocumentLength(document)];
+            for (int token = 0; token < documents.getDocumentLength(document); token++) {
+                matZ[document][token] = random.nextInt(numTopics); // random topic assignment
+            }
+        }
+        countTopicAssignments();
+    }
+
+    /**
+     * Like {@link #initializeCountMatrices()}, but the topic assignments and the
+     * topic word counts are written to memory mapped files. The documents are
+     * visited block by block in the same order, so the random assignments are
+     * the same as in the heap.
+     */
+    private void initializeOutOfCore() {
+        try {
+            Files.createDirectories(outOfCoreDirectory);
+            matTopicWord = new MappedTopicWordMatrix(outOfCoreDirectory.resolve(TOPIC_WORD_FILE), numTopics,
+                    vocabularySize);
+            topicAssignments = new MappedTopicAssignments(outOfCoreDirectory.resolve(TOPICS_FILE), documents);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create the out of core storage", e);
+        }
+        matZ = new int[documents.getNumDocuments()][];
+        matDocTopic = new SparseDocTopicMatrix(documents.getNumDocuments(), numTopics, compactStorage);
         vecTopic = new int[numTopics];
-        matZ = new int[documents.length][];
         numTokens = 0;
+        logLikelihoodValid = false;
 
-        for (int document = 0; document < documents.length; document++) {
-            matZ[document] = new int[documents[document].length];
-            for (int token = 0; token < documents[document].length; token++) {
-                int word = documents[document][token];
+        for (int document = 0; document < documents.getNumDocuments(); document++) {
+            int[] topics = new int[documents.getDocumentLength(document)];
+            for (int token = 0; token < topics.length; token++) {
                 int topic = random.nextInt(numTopics); // random topic assignment
-                matZ[document][token] = topic;
-                matTopicWord[topic][word]++;
-                matDocTopic[document][topic]++;
+                topics[token] = topic;
+                matTopicWord.increment(topic, documents.getWord(document, token));
                 vecTopic[topic]++;
                 numTokens++;
             }
+            topicAssignments.write(document, topics);
+        }
+    }
+
+    /**
+     * Runs the task for every block of documents. Out of core the topic
+     * assignments of a block are loaded into matZ and counted into matDocTopic
+     * before the task, and released after it. Otherwise all documents are a
+     * single block.
+     * 
+     * @param write True to write the topic assignments of the block back to the
+     *              file when the task is done.
+     * @param task  Task that gets the index, the first and the last document of
+     *              every block.
+     */
+    protected void forEachBlock(boolean write, PartitionTask task) {
+        int numDocuments = documents.getNumDocuments();
+        if (topicAssignments == null) {
+            task.run(0, 0, numDocuments);
+            return;
+        }
+        for (int first = 0; first < numDocuments; first += documentsPerBlock) {
+            int last = (int) Math.min((long) first + documentsPerBlock, numDocuments);
+            for (int document = first; document < last; document++) {
+                matZ[document] = topicAssignments.read(document);
+                for (int topic : matZ[document]) {
+                    matDocTopic.increment(document, topic);
+                }
+            }
+            try {
+                task.run(first / documentsPerBlock, first, last);
+            } finally {
+                for (int document = first; document < last; document++) {
+                    if (write) {
+                        topicAssignments.write(document, matZ[document]);
+                    }
+                    matZ[document] = null;
+                    matDocTopic.release(document);
+                }
+            }
+        }
+    }
+
+    private void checkInCore(String operation) {
+        if (topicAssignments != null) {
+            throw new UnsupportedOperationException(operation + " is not supported out of core");
+        }
+    }
+
+    /**
+     * Allocates the count matrices and fills them with the topic assignments of
+     * matZ.
+     */
+    protected void countTopicAssignments() {
+        if (compactStorage) {
+            matTopicWord = new AdaptiveTopicWordMatrix(numTopics, vocabularySize);
+        } else {
+            matTopicWord = WordMajorTopicWordMatrix.create(numTopics, vocabularySize);
+        }
+        matDocTopic = new SparseDocTopicMatrix(documents.getNumDocuments(), numTopics, compactStorage);
+        vecTopic = new int[numTopics];
+        numTokens = 0;
+        logLikelihoodValid = false;
+
+        for (int document = 0; document < documents.getNumDocuments(); document++) {
+            for (int token = 0; token < documents.getDocumentLength(document); token++) {
+                int word = documents.getWord(document, token);
+                int topic = matZ[document][token];
+                matTopicWord.increment(topic, word);
+                matDocTopic.increment(document, topic);
+                vecTopic[topic]++;
+                numTokens++;
+            }
+        }
+    }
+
+    /**
+     * Builds the data structures that the sampling algorithm needs in addition to
+     * the count matrices, for example alias tables. It is called after the count
+     * matrices were initialized or restored from a checkpoint.
+     */
+    protected void initializeSamplingStructures() {
+    }
+
+    /**
+     * Writes the topic assignments, the priors and the state of the random number
+     * generator to a checkpoint file. The count matrices and all other data
+     * structures are derived from them on restore. To be able to store the state
+     * of the random number generator, it is reseeded with a seed drawn from
+     * itself. A restored GibbsLda continues exactly like the saved one. The other
+     * samplers rebuild their auxiliary structures (alias tables, hash table
+     * layouts, incrementally updated sums) from scratch, so they continue with a
+     * different but equally valid chain.
+     */
+    @Override
+    public void saveCheckpoint(Path path) throws IOException {
+        checkInCore("A checkpoint");
+        long seed = random.nextLong();
+        random = new SplittableRandom(seed);
+        Checkpoint.write(path, this, seed);
+    }
+
+    @Override
+    public void restoreCheckpoint(Path path) throws IOException {
+        checkInCore("A checkpoint");
+        Checkpoint checkpoint = Checkpoint.read(path, documents, numTopics, vocabularySize);
+        matZ = checkpoint.getMatZ();
+        alpha = checkpoint.getAlpha();
+        alphaSum = checkpoint.getAlphaSum();
+        beta = checkpoint.getBeta();
+        betaSum = checkpoint.getBetaSum();
+        random = new SplittableRandom(checkpoint.getSeed());
+        countTopicAssignments();
+        initializeSamplingStructures();
+    }
+
+    public void addDocuments(int[][] newDocuments) {
+        addDocuments(new ArrayCorpus(newDocuments));
+    }
+
+    /**
+     * The new tokens are not assigned random topics. Every token is sampled once
+     * from the full conditional given the current counts, including the tokens of
+     * the new documents that were sampled before it. This way the existing topics
+     * are not diluted with noise and a few iterations are enough to fit the new
+     * documents into the model.
+     */
+    @Override
+    public void addDocuments(Corpus newDocuments) {
+        if (matZ == null) {
+            throw new IllegalStateException("The model has to be initialized before documents can be added");
+        }
+        checkInCore("Adding documents");
+        for (int document = 0; document < newDocuments.getNumDocuments(); document++) {
+            for (int token = 0; token < newDocuments.getDocumentLength(document); token++) {
+                int word = newDocuments.getWord(document, token);
+                if (word < 0 || word >= vocabularySize) {
+                    throw new IllegalArgumentException(
+                            "Word " + word + " is outside of the vocabulary of size " + vocabularySize);
+                }
+            }
+        }
+
+        StreamingCorpus stream = getStreamingCorpus();
+        int firstDocument = stream.getNumDocuments();
+        stream.append(newDocuments);
+        matZ = Arrays.copyOf(matZ, stream.getNumDocuments());
+        matDocTopic.addDocuments(stream.getNumDocuments() - firstDocument);
+
+        boolean[] changedWords = new boolean[vocabularySize];
+        double[] cumulativeProbabilities = new double[numTopics];
+        DocTopicBuffer docTopic = new DocTopicBuffer(numTopics);
+        for (int document = firstDocument; document < stream.getNumDocuments(); document++) {
+            matZ[document] = new int[documents.getDocumentLength(document)];
+            for (int token = 0; token < matZ[document].length; token++) {
+                int word = documents.getWord(document, token);
+                double probabilitySum = 0.0;
+                for (int topic = 0; topic < numTopics; topic++) {
+                    probabilitySum += (docTopic.get(topic) + alpha[topic]) * (matTopicWord.get(topic, word) + beta[word])
+                            / (vecTopic[topic] + betaSum);
+                    cumulativeProbabilities[topic] = probabilitySum;
+                }
+                int topic = lowerBound(cumulativeProbabilities, numTopics, random.nextDouble() * probabilitySum);
+                incrementCountMatrices(docTopic, word, topic);
+                matZ[document][token] = topic;
+                changedWords[word] = true;
+                numTokens++;
+            }
+            docTopic.store(matDocTopic, document);
         }
+        logLikelihoodValid = false;
+        updateSamplingStructures(changedWords);
+    }
+
+    @Override
+    public void retireDocuments(int count) {
+        if (matZ == null) {
+            throw new IllegalStateException("The model has to be initialized before documents can be retired");
+        }
+        checkInCore("Retiring documents");
+        StreamingCorpus stream = getStreamingCorpus();
+        if (count < 0 || count > stream.getNumDocuments()) {
+            throw new IllegalArgumentException(
+                    "Can not retire " + count + " of " + stream.getNumDocuments() + " documents");
+        }
+
+        boolean[] changedWords = new boolean[vocabularySize];
+        for (int document = 0; document < count; document++) {
+            for (int token = 0; token < matZ[document].length; token++) {
+                int word = documents.getWord(document, token);
+                decrementTopicCounts(word, matZ[document][token]);
+                changedWords[word] = true;
+                numTokens--;
+            }
+        }
+        stream.retire(count);
+        matZ = Arrays.copyOfRange(matZ, count, matZ.length);
+        matDocTopic.removeDocuments(count);
+        logLikelihoodValid = false;
+        updateSamplingStructures(changedWords);
+    }
+
+    /**
+     * Documents can only be added to and retired from a {@link StreamingCorpus}.
+     * Any other corpus is wrapped into one on first use.
+     */
+    private StreamingCorpus getStreamingCorpus() {
+        if (!(documents instanceof StreamingCorpus)) {
+            documents = new StreamingCorpus(documents);
+        }
+        return (StreamingCorpus) documents;
+    }
+
+    /**
+     * Called after documents were added or retired. The count matrices are
+     * already up to date. By default all sampling structures are rebuilt,
+     * subclasses can override this method to update only the parts that depend
+     * on the changed words.
+     *
+     * @param changedWords True for every word whose topic counts changed.
+     */
+    protected void updateSamplingStructures(boolean[] changedWords) {
+        initializeSamplingStructures();
     }
 
     @Override
     public void run(int iterations) {
-        for (int i = 0; i < iterations; i++) {
+        ExecutorService executor = numThreads == 1 ? null : Executors.newFixedThreadPool(numThreads);
+        try {
+            for (int i = 0; i < iterations; i++) {
+                iterate(executor);
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * After every iteration a snapshot of the count matrices is handed to a
+     * background thread, which evaluates the criterion while the sampling
+     * continues. A new snapshot is only taken when the previous one was
+     * evaluated, so the sampling thread never waits and the decision lags one or
+     * two iterations behind.
+     */
+    @Override
+    public int runUntilConverged(ConvergenceCriterion criterion, int maxIterations) {
+        ExecutorService executor = numThreads == 1 ? null : Executors.newFixedThreadPool(numThreads);
+        ExecutorService evaluator = Executors.newSingleThreadExecutor();
+        Future<Boolean> pending = null;
+        int iterations = 0;
+        try {
+            while (iterations < maxIterations) {
+                iterate(executor);
+                iterations++;
+                if (pending != null && pending.isDone()) {
+                    if (getResult(pending)) {
+                        break;
+                    }
+                    pending = null;
+                }
+                if (pending == null) {
+                    ModelSnapshot snapshot = createSnapshot();
+                    pending = evaluator.submit(() -> criterion.isConverged(snapshot));
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+            evaluator.shutdownNow();
+        }
+        return iterations;
+    }
+
+    private static boolean getResult(Future<Boolean> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the convergence check", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("The convergence check failed", e.getCause());
+        }
+    }
+
+    /**
+     * Copies the count matrices for the convergence check. This is a plain
+     * memory copy, which is much cheaper than computing the log likelihood.
+     */
+    protected ModelSnapshot createSnapshot() {
+        checkInCore("A convergence check");
+        GibbsLda copy;
+        try {
+            copy = (GibbsLda) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        copy.matTopicWord = matTopicWord.copy();
+        copy.matDocTopic = matDocTopic.copy();
+        copy.vecTopic = vecTopic.clone();
+        copy.numThreads = 1;
+        double logLikelihood = trackLogLikelihood && logLikelihoodValid ? getLogLikelihood() : Double.NaN;
+        return new CountSnapshot(copy, iteration, logLikelihood);
+    }
+
+    /**
+     * Runs a single iteration, with metrics if anyone is interested in them.
+     */
+    private void iterate(ExecutorService executor) {
+        IterationEvent event = new IterationEvent();
+        if (listeners.isEmpty() && !event.isEnabled()) {
+            sweep(executor);
+        } else {
+            instrumentedSweep(executor, event);
+        }
+        iteration++;
+    }
+
+    private void sweep(ExecutorService executor) {
+        if (executor == null) {
             fullCorpusSweep();
+        } else {
+            parallelCorpusSweep(executor);
+        }
+    }
+
+    /**
+     * Runs a sweep with metrics and reports them to the listeners and to JFR.
+     */
+    private void instrumentedSweep(ExecutorService executor, IterationEvent event) {
+        metrics = new IterationMetrics();
+        long allocatedBefore = IterationMetrics.getTotalAllocatedBytes();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            sweep(executor);
+        } finally {
+            event.end();
+            long elapsed = System.nanoTime() - start;
+            long allocatedAfter = IterationMetrics.getTotalAllocatedBytes();
+            long allocated = allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore;
+            metrics.finish(iteration, numTokens, elapsed, allocated);
+        }
+        IterationMetrics finished = metrics;
+        metrics = null;
+        if (event.shouldCommit()) {
+            event.commit(getClass().getSimpleName(), finished);
+        }
+        for (IterationListener listener : listeners) {
+            listener.iterationFinished(finished);
         }
     }
 
+    @Override
+    public void addIterationListener(IterationListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeIterationListener(IterationListener listener) {
+        listeners.remove(listener);
+    }
+
     /**
-     * The Gibbs sampling algorithm which iterates over every word token in every
-     * document ones.
+     * Iterates over every word token in every document ones.
      */
     protected void fullCorpusSweep() {
-        double[] cumulativeProbabilities = new double[numTopics];
+        forEachBlock(true, (block, first, last) -> sampleDocuments(first, last));
+    }
+
+    /**
+     * The Gibbs sampling algorithm which iterates over every word token of the
+     * given documents ones.
+     * 
+     * @param firstDocument Index of the first document (inclusive).
+     * @param lastDocument  Index of the last document (exclusive).
+     */
+    protected void sampleDocuments(int firstDocument, int lastDocument) {
+        double[] probabilities = new double[numTopics];
+        // dense copy of the counts of the current document
+        DocTopicBuffer docTopic = new DocTopicBuffer(numTopics);
+
+        for (int document = firstDocument; document < lastDocument; document++) {
+            docTopic.load(matDocTopic, document);
 
-        for (int document = 0; document < matZ.length; document++) {
             for (int token = 0; token < matZ[document].length; token++) {
                 int topic = matZ[document][token];
-                int word = documents[document][token];
+                int word = documents.getWord(document, token);
 
-                decrementCountMatrices(document, word, topic);
+                decrementCountMatrices(docTopic, word, topic);
 
-                double probabilitySum = 0.0;
-                for (int topicI = 0; topicI < numTopics; topicI++) {
-                    double probabilityOfTopicI = matDocTopic[document][topicI] + alpha[topicI];
-                    double probabilityOfWordInTopicI = (matTopicWord[topicI][word] + beta[word])
-                            / (vecTopic[topicI] + betaSum);
-                    probabilitySum += probabilityOfTopicI * probabilityOfWordInTopicI;
-                    cumulativeProbabilities[topicI] = probabilitySum;
-                }
+                double probabilitySum = kernels.topicProbabilities(docTopic.getCounts(), matTopicWord, word, vecTopic,
+                        alpha, beta[word], betaSum, probabilities);
                 double u = random.nextDouble() * probabilitySum;
-                topic = lowerBound(cumulativeProbabilities, cumulativeProbabilities.length, u);
+                topic = linearSearch(probabilities, numTopics, u);
 
-                incrementCountMatrices(document, word, topic);
+                incrementCountMatrices(docTopic, word, topic);
 
                 matZ[document][token] = topic;
             }
+
+            docTopic.store(matDocTopic, document);
+        }
+    }
+
+    /**
+     * Multi-threaded sweep. The documents are split into numThreads contiguous
+     * partitions and each partition is sampled by its own worker. matZ and
+     * matDocTopic are shared since every document belongs to exactly one worker.
+     * In the DATA_PARALLEL mode (AD-LDA) every worker owns a private copy of
+     * matTopicWord and vecTopic and the changes are merged into the global count
+     * matrices when all workers are done. In the asynchronous modes all workers
+     * update the same matTopicWord and vecTopic concurrently and nothing needs to
+     * be merged.
+     * 
+     * @param executor Executor that runs the workers.
+     */
+    protected void parallelCorpusSweep(ExecutorService executor) {
+        GibbsLda[] workers = new GibbsLda[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            workers[i] = createWorker();
+        }
+        forEachBlock(true, (block, firstDocument, lastDocument) -> {
+            forEachPartition(executor, lastDocument - firstDocument, (partition, first, last) -> {
+                workers[partition].sampleDocuments(firstDocument + first, firstDocument + last);
+            });
+        });
+        mergeWorkers(workers, executor);
+    }
+
+    /**
+     * Creates a worker for the parallel sweep. A worker is a shallow copy of this
+     * model with its own random number generator. In the DATA_PARALLEL mode it
+     * also gets its own copies of matTopicWord and vecTopic and subclasses need to
+     * copy every additional data structure that depends on them.
+     * 
+     * @return The worker.
+     */
+    protected GibbsLda createWorker() {
+        GibbsLda worker;
+        try {
+            worker = (GibbsLda) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        worker.isWorker = true;
+        worker.random = random.split();
+        worker.documentLogLikelihood = 0.0;
+        worker.wordLogLikelihood = 0.0;
+        worker.metrics = metrics == null ? null : new IterationMetrics();
+        if (parallelMode == ParallelMode.DATA_PARALLEL) {
+            worker.matTopicWord = matTopicWord.copy();
+            worker.vecTopic = vecTopic.clone();
+        } else {
+            worker.atomicUpdates = parallelMode == ParallelMode.ASYNCHRONOUS;
+        }
+        return worker;
+    }
+
+    /**
+     * Called after all workers have finished their sweep. In the DATA_PARALLEL
+     * mode this adds the changes that the workers made to their private count
+     * matrices to the global count matrices. Subclasses can override this method
+     * to update their data structures after the sweep.
+     * 
+     * @param workers  The workers of the parallel sweep.
+     * @param executor Executor that can be used to parallelize the merge.
+     */
+    protected void mergeWorkers(GibbsLda[] workers, ExecutorService executor) {
+        if (metrics != null) {
+            for (GibbsLda worker : workers) {
+                metrics.merge(worker.metrics);
+            }
+        }
+        // every document belongs to exactly one worker, so the changes of the workers add up
+        for (GibbsLda worker : workers) {
+            documentLogLikelihood += worker.documentLogLikelihood;
+        }
+        if (parallelMode != ParallelMode.DATA_PARALLEL) {
+            // the workers changed the shared counts one by one, so their changes add up as well
+            for (GibbsLda worker : workers) {
+                wordLogLikelihood += worker.wordLogLikelihood;
+            }
+            // unless updates got lost
+            if (parallelMode == ParallelMode.ASYNCHRONOUS_UNSAFE) {
+                logLikelihoodValid = false;
+            }
+            return;
+        }
+
+        // the changes of the workers to the topic word part do not add up, it is updated cell by cell
+        double[] logLikelihoodChange = new double[numThreads];
+        forEachPartition(executor, vocabularySize, (partition, first, last) -> {
+            for (int word = first; word < last; word++) {
+                for (int topic = 0; topic < numTopics; topic++) {
+                    int global = matTopicWord.get(topic, word);
+                    int count = global;
+                    for (GibbsLda worker : workers) {
+                        count += worker.matTopicWord.get(topic, word) - global;
+                    }
+                    matTopicWord.set(topic, word, count);
+                    if (trackLogLikelihood && count != global) {
+                        logLikelihoodChange[partition] += logGammaDifference(beta[word], global, count);
+                    }
+                }
+            }
+        });
+        for (int topic = 0; topic < numTopics; topic++) {
+            int count = vecTopic[topic];
+            for (GibbsLda worker : workers) {
+                count += worker.vecTopic[topic] - vecTopic[topic];
+            }
+            if (trackLogLikelihood) {
+                wordLogLikelihood -= logGammaDifference(betaSum, vecTopic[topic], count);
+            }
+            vecTopic[topic] = count;
+        }
+        for (double change : logLikelihoodChange) {
+            wordLogLikelihood += change;
+        }
+    }
+
+    /**
+     * A task that processes the indices [first, last) of a partition.
+     */
+    protected interface PartitionTask {
+        void run(int partition, int first, int last);
+    }
+
+    /**
+     * Splits the indices [0, size) into numThreads contiguous partitions and runs
+     * the task for each partition on the executor. The method blocks until all
+     * partitions are processed.
+     * 
+     * @param executor Executor that runs the tasks.
+     * @param size     Number of indices.
+     * @param task     Task that is executed for every partition.
+     */
+    protected void forEachPartition(ExecutorService executor, int size, PartitionTask task) {
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < numThreads; i++) {
+            int partition = i;
+            int first = (int) ((long) size * i / numThreads);
+            int last = (int) ((long) size * (i + 1) / numThreads);
+            futures.add(executor.submit(() -> task.run(partition, first, last)));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the workers", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A worker failed", e.getCause());
         }
     }
 
@@ -163,9 +849,27 @@ public class GibbsLda implements LdaModel {
      * @param topic    Topic index
      */
     protected void decrementCountMatrices(int document, int word, int topic) {
-        matTopicWord[topic][word]--;
-        matDocTopic[document][topic]--;
-        vecTopic[topic]--;
+        decrementTopicCounts(word, topic);
+        matDocTopic.decrement(document, topic);
+        if (trackLogLikelihood) {
+            documentLogLikelihood -= Math.log(alpha[topic] + matDocTopic.get(document, topic));
+        }
+    }
+
+    /**
+     * Decrements all count matrices by one for the given indices. The document
+     * topic counts are only decremented in the buffer of the current document.
+     * 
+     * @param document Buffer of the current document
+     * @param word     Word index
+     * @param topic    Topic index
+     */
+    protected void decrementCountMatrices(DocTopicBuffer document, int word, int topic) {
+        decrementTopicCounts(word, topic);
+        document.decrement(topic);
+        if (trackLogLikelihood) {
+            documentLogLikelihood -= Math.log(alpha[topic] + document.get(topic));
+        }
     }
 
     /**
@@ -176,20 +880,164 @@ public class GibbsLda implements LdaModel {
      * @param topic    Topic index
      */
     protected void incrementCountMatrices(int document, int word, int topic) {
-        matTopicWord[topic][word]++;
-        matDocTopic[document][topic]++;
-        vecTopic[topic]++;
+        incrementTopicCounts(word, topic);
+        if (trackLogLikelihood) {
+            documentLogLikelihood += Math.log(alpha[topic] + matDocTopic.get(document, topic));
+        }
+        matDocTopic.increment(document, topic);
+    }
+
+    /**
+     * Increments all count matrices by one for the given indices. The document
+     * topic counts are only incremented in the buffer of the current document.
+     * 
+     * @param document Buffer of the current document
+     * @param word     Word index
+     * @param topic    Topic index
+     */
+    protected void incrementCountMatrices(DocTopicBuffer document, int word, int topic) {
+        incrementTopicCounts(word, topic);
+        if (trackLogLikelihood) {
+            documentLogLikelihood += Math.log(alpha[topic] + document.get(topic));
+        }
+        document.increment(topic);
+    }
+
+    /*
+     * The log likelihood changes are based on logGamma(x + 1) - logGamma(x) =
+     * log(x). Decrementing a count c of the word part changes logGamma(beta + c)
+     * by -log(beta + c - 1) and logGamma(betaSum + ck) in the denominator by
+     * -log(betaSum + ck - 1). In the atomic mode the counts before the update are
+     * taken from getAndAdd, such that concurrent updates are accounted correctly.
+     * Both changes are combined into the logarithm of a quotient, which saves
+     * one logarithm per update.
+     */
+
+    private void decrementTopicCounts(int word, int topic) {
+        if (atomicUpdates) {
+            int count = matTopicWord.getAndAdd(topic, word, -1) - 1;
+            int topicCount = (int) INT_ARRAY.getAndAdd(vecTopic, topic, -1) - 1;
+            if (trackLogLikelihood) {
+                wordLogLikelihood += Math.log((betaSum + topicCount) / (beta[word] + count));
+            }
+        } else {
+            matTopicWord.decrement(topic, word);
+            vecTopic[topic]--;
+            if (trackLogLikelihood) {
+                wordLogLikelihood += Math.log((betaSum + vecTopic[topic]) / (beta[word] + matTopicWord.get(topic, word)));
+            }
+        }
+    }
+
+    private void incrementTopicCounts(int word, int topic) {
+        if (atomicUpdates) {
+            int count = matTopicWord.getAndAdd(topic, word, 1);
+            int topicCount = (int) INT_ARRAY.getAndAdd(vecTopic, topic, 1);
+            if (trackLogLikelihood) {
+                wordLogLikelihood += Math.log((beta[word] + count) / (betaSum + topicCount));
+            }
+        } else {
+            if (trackLogLikelihood) {
+                wordLogLikelihood += Math.log((beta[word] + matTopicWord.get(topic, word)) / (betaSum + vecTopic[topic]));
+            }
+            matTopicWord.increment(topic, word);
+            vecTopic[topic]++;
+        }
+    }
+
+    /**
+     * @return logGamma(x + to) - logGamma(x + from), computed as a sum of
+     *         logarithms.
+     */
+    private static double logGammaDifference(double x, int from, int to) {
+        double difference = 0.0;
+        for (int i = from; i < to; i++) {
+            difference += Math.log(x + i);
+        }
+        for (int i = to; i < from; i++) {
+            difference -= Math.log(x + i);
+        }
+        return difference;
+    }
+
+    @Override
+    public long getCountDrift() {
+        TopicWordMatrix expectedTopicWord = WordMajorTopicWordMatrix.create(numTopics, vocabularySize);
+        int[] expectedTopic = new int[numTopics];
+        forEachBlock(false, (block, first, last) -> {
+            for (int document = first; document < last; document++) {
+                for (int token = 0; token < documents.getDocumentLength(document); token++) {
+                    int topic = matZ[document][token];
+                    expectedTopicWord.increment(topic, documents.getWord(document, token));
+                    expectedTopic[topic]++;
+                }
+            }
+        });
+
+        long drift = 0;
+        for (int word = 0; word < vocabularySize; word++) {
+            for (int topic = 0; topic < numTopics; topic++) {
+                drift += Math.abs(expectedTopicWord.get(topic, word) - matTopicWord.get(topic, word));
+            }
+        }
+        for (int topic = 0; topic < numTopics; topic++) {
+            drift += Math.abs(expectedTopic[topic] - vecTopic[topic]);
+        }
+        return drift;
     }
 
     /**
      * Computes the current LogLikelihood of the model. This method takes some
-     * computing resources!
+     * computing resources, unless the log likelihood is tracked, see
+     * {@link #setLogLikelihoodTracking(boolean)}.
      * 
      * @return LogLikelihood of the model.
      */
     @Override
     public double getLogLikelihood() {
-        return getLogLikelihoodMallet();
+        if (!trackLogLikelihood) {
+            return getLogLikelihoodMallet();
+        }
+        if (!logLikelihoodValid) {
+            documentLogLikelihood = getDocumentLogLikelihood();
+            wordLogLikelihood = getWordLogLikelihood();
+            logLikelihoodValid = true;
+        }
+        return documentLogLikelihood + wordLogLikelihood;
+    }
+
+    /**
+     * Tracks the log likelihood during sampling. Every change of the count
+     * matrices updates it in O(1) with the difference of the changed logGamma
+     * terms, so {@link #getLogLikelihood()} only needs a full computation after
+     * initialization and after the priors or the documents changed. The tracked
+     * value slightly differs from {@link #getLogLikelihoodMallet()}, since the
+     * differences are exact while the full computation uses Stirling's
+     * approximation. Tracking costs a few logarithms per token.
+     */
+    @Override
+    public void setLogLikelihoodTracking(boolean track) {
+        this.trackLogLikelihood = track;
+        this.logLikelihoodValid = false;
+    }
+
+    @Override
+    public void setCompactStorage(boolean compact) {
+        this.compactStorage = compact;
+    }
+
+    @Override
+    public void setOutOfCore(Path directory, int documentsPerBlock) {
+        if (directory != null && documentsPerBlock < 1) {
+            throw new IllegalArgumentException("Number of documents per block must be positive: " + documentsPerBlock);
+        }
+        this.outOfCoreDirectory = directory;
+        this.documentsPerBlock = documentsPerBlock;
+    }
+
+    @Override
+    public void setKernels(Kernels kernels) {
+        this.kernels = kernels;
     }
 
     /**
@@ -199,69 +1047,111 @@ public class GibbsLda implements LdaModel {
      * @return LogLikelihood of the model.
      */
     public double getLogLikelihoodMallet() {
-        double logLikelihood = 0.0;
+        return getDocumentLogLikelihood() + getWordLogLikelihood();
+    }
 
-        // document topic
+    /**
+     * @return The part of the log likelihood that depends on the document topic
+     *         counts.
+     */
+    protected double getDocumentLogLikelihood() {
+        int maxLength = 0;
+        for (int document = 0; document < documents.getNumDocuments(); document++) {
+            maxLength = Math.max(maxLength, documents.getDocumentLength(document));
+        }
+        // with a symmetric alpha all cells share the same lookup table
+        LogGammaTable table = LogGammaTable.isSymmetric(alpha) ? new LogGammaTable(alpha[0], maxLength) : null;
         double[] logGammaAlpha = new double[numTopics];
         for (int topic = 0; topic < numTopics; topic++) {
             logGammaAlpha[topic] = logGammaStirling(alpha[topic]);
         }
-        for (int document = 0; document < documents.length; document++) {
-            for (int topic = 0; topic < numTopics; topic++) {
-                float count = matDocTopic[document][topic];
-                if (count > 0.1) {
-                    logLikelihood += logGammaStirling(alpha[topic] + count) - logGammaAlpha[topic];
-                }
-            }
-            logLikelihood -= logGammaStirling(alphaSum + documents[document].length);
-        }
-        logLikelihood += documents.length * logGammaStirling(alphaSum);
 
-        // topic term
-        double[] logGammaBeta = new double[vocabularySize];
-        for (int term = 0; term < vocabularySize; term++) {
-            logGammaBeta[term] = logGammaStirling(beta[term]);
-        }
+        double[] logLikelihood = new double[1];
+        forEachBlock(false, (block, firstDocument, lastDocument) -> {
+            logLikelihood[0] += ParallelSum.sum(numThreads, lastDocument - firstDocument, DOCUMENT_GRAIN,
+                    (first, last) -> {
+                        double sum = 0.0;
+                        for (int document = firstDocument + first; document < firstDocument + last; document++) {
+                            // only the nonzero counts are stored
+                            for (int slot = 0; slot < matDocTopic.getNumSlots(document); slot++) {
+                                int count = matDocTopic.getCount(document, slot);
+                                if (count > 0) {
+                                    int topic = matDocTopic.getTopic(document, slot);
+                                    sum += table != null ? table.get(count)
+                                            : logGammaStirling(alpha[topic] + count) - logGammaAlpha[topic];
+                                }
+                            }
+                            sum -= logGammaStirling(alphaSum + documents.getDocumentLength(document));
+                        }
+                        return sum;
+                    });
+        });
+        return logLikelihood[0] + documents.getNumDocuments() * logGammaStirling(alphaSum);
+    }
+
+    /**
+     * @return The part of the log likelihood that depends on the topic word
+     *         counts.
+     */
+    protected double getWordLogLikelihood() {
+        int maxCount = 0;
         for (int topic = 0; topic < numTopics; topic++) {
-            for (int term = 0; term < vocabularySize; term++) {
-                float count = matTopicWord[topic][term];
-                if (count > 0.1) {
-                    logLikelihood += logGammaStirling(beta[term] + count) - logGammaBeta[term];
+            maxCount = Math.max(maxCount, vecTopic[topic]);
+        }
+        LogGammaTable table = LogGammaTable.isSymmetric(beta) ? new LogGammaTable(beta[0], maxCount) : null;
+
+        double logLikelihood = ParallelSum.sum(numThreads, vocabularySize, WORD_GRAIN, (first, last) -> {
+            double sum = 0.0;
+            for (int term = first; term < last; term++) {
+                double logGammaBeta = table != null ? 0.0 : logGammaStirling(beta[term]);
+                for (int topic = 0; topic < numTopics; topic++) {
+                    int count = matTopicWord.get(topic, term);
+                    if (count > 0) {
+                        sum += table != null ? table.get(count) : logGammaStirling(beta[term] + count) - logGammaBeta;
+                    }
                 }
             }
+            return sum;
+        });
+        for (int topic = 0; topic < numTopics; topic++) {
             logLikelihood -= logGammaStirling(betaSum + vecTopic[topic]);
         }
-        logLikelihood += numTopics * logGammaStirling(betaSum);
-
-        return logLikelihood;
+        return logLikelihood + numTopics * logGammaStirling(betaSum);
     }
 
     public static final double HALF_LOG_TWO_PI = Math.log(2 * Math.PI) / 2;
 
     /**
-     * Use a fifth order Stirling's approximation. Copied from Mallet LDA algorithm.
+     * Use a fifth order Stirling's approximation, see
+     * {@link LogGammaTable#logGamma(double)}. Copied from Mallet LDA algorithm.
      * 
      * @param z Note that Stirling's approximation is increasingly unstable as z
      *          approaches 0. If z is less than 2, we shift it up, calculate the
      *          approximation, and then shift the answer back down.
      */
     public static double logGammaStirling(double z) {
-        int shift = 0;
-        while (z < 2) {
-            z++;
-            shift++;
-        }
-
-        double result = HALF_LOG_TWO_PI + (z - 0.5) * Math.log(z) - z + 1 / (12 * z) - 1 / (360 * z * z * z)
-                + 1 / (1260 * z * z * z * z * z);
+        return LogGammaTable.logGamma(z);
+    }
 
-        while (shift > 0) {
-            shift--;
-            z--;
-            result -= Math.log(z);
+    /**
+     * Finds the first index at which the running sum of the unnormalized
+     * probabilities p reaches u, which is the lower bound of u in the cumulative
+     * probabilities without computing all of them.
+     * 
+     * @param p      Unnormalized probabilities.
+     * @param length Values in p that appear after the length are ignored.
+     * @param u      Value between 0 and the sum of p.
+     * @return The sampled index.
+     */
+    protected int linearSearch(double[] p, int length, double u) {
+        for (int i = 0; i < length - 1; i++) {
+            u -= p[i];
+            if (u <= 0) {
+                return i;
+            }
         }
-
-        return result;
+        // u may exceed the sum of p by a rounding error
+        return length - 1;
     }
 
     /**
@@ -298,14 +1188,16 @@ public class GibbsLda implements LdaModel {
      */
     @Override
     public double[][] getTheta() {
-        double[][] theta = new double[documents.length][numTopics];
+        double[][] theta = new double[documents.getNumDocuments()][numTopics];
 
-        for (int document = 0; document < documents.length; document++) {
-            for (int topic = 0; topic < numTopics; topic++) {
-                theta[document][topic] = (matDocTopic[document][topic] + alpha[topic])
-                        / (documents[document].length + alphaSum);
+        forEachBlock(false, (block, first, last) -> {
+            for (int document = first; document < last; document++) {
+                for (int topic = 0; topic < numTopics; topic++) {
+                    theta[document][topic] = (matDocTopic.get(document, topic) + alpha[topic])
+                            / (documents.getDocumentLength(document) + alphaSum);
+                }
             }
-        }
+        });
 
         return theta;
     }
@@ -320,9 +1212,9 @@ public class GibbsLda implements LdaModel {
     public double[][] getPhi() {
         double[][] phi = new double[numTopics][vocabularySize];
 
-        for (int topic = 0; topic < numTopics; topic++) {
-            for (int word = 0; word < vocabularySize; word++) {
-                phi[topic][word] = (matTopicWord[topic][word] + beta[word]) / (vecTopic[topic] + betaSum);
+        for (int word = 0; word < vocabularySize; word++) {
+            for (int topic = 0; topic < numTopics; topic++) {
+                phi[topic][word] = (matTopicWord.get(topic, word) + beta[word]) / (vecTopic[topic] + betaSum);
             }
         }
 
@@ -331,6 +1223,14 @@ public class GibbsLda implements LdaModel {
 
     @Override
     public int[][] getMatZ() {
+        if (topicAssignments != null) {
+            // out of core matZ only holds the current block, so all blocks are read into a new array
+            int[][] topics = new int[documents.getNumDocuments()][];
+            for (int document = 0; document < topics.length; document++) {
+                topics[document] = topicAssignments.read(document);
+            }
+            return topics;
+        }
         return this.matZ;
     }
 
@@ -339,6 +1239,48 @@ public class GibbsLda implements LdaModel {
         return numTokens;
     }
 
+    /**
+     * @return A copy of the number of tokens that are assigned to every topic.
+     */
+    public int[] getTopicCounts() {
+        return vecTopic.clone();
+    }
+
+    /**
+     * Copies the topic counts of the given words into rows, numTopics counts per
+     * word in the order of words.
+     */
+    public void getTopicWordCounts(int[] words, int[] rows) {
+        for (int i = 0; i < words.length; i++) {
+            for (int topic = 0; topic < numTopics; topic++) {
+                rows[i * numTopics + topic] = matTopicWord.get(topic, words[i]);
+            }
+        }
+    }
+
+    /**
+     * Replaces the topic counts of the given words and the number of tokens per
+     * topic, for example with the global counts of a parameter server, and
+     * updates the sampling structures of the changed words. The counts must
+     * include the topic assignments of this model.
+     * 
+     * @param words       The words whose counts are replaced.
+     * @param rows        numTopics counts per word in the order of words.
+     * @param topicCounts The number of tokens per topic.
+     */
+    public void setTopicWordCounts(int[] words, int[] rows, int[] topicCounts) {
+        boolean[] changedWords = new boolean[vocabularySize];
+        for (int i = 0; i < words.length; i++) {
+            for (int topic = 0; topic < numTopics; topic++) {
+                matTopicWord.set(topic, words[i], rows[i * numTopics + topic]);
+            }
+            changedWords[words[i]] = true;
+        }
+        System.arraycopy(topicCounts, 0, vecTopic, 0, numTopics);
+        logLikelihoodValid = false;
+        updateSamplingStructures(changedWords);
+    }
+
     @Override
     public double[] getAlpha() {
         return alpha;
@@ -359,6 +1301,29 @@ public class GibbsLda implements LdaModel {
         return vocabularySize;
     }
 
+    @Override
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    @Override
+    public void setNumThreads(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + numThreads);
+        }
+        this.numThreads = numThreads;
+    }
+
+    @Override
+    public ParallelMode getParallelMode() {
+        return parallelMode;
+    }
+
+    @Override
+    public void setParallelMode(ParallelMode parallelMode) {
+        this.parallelMode = parallelMode;
+    }
+
     @Override
     public void setSeed(long seed) {
         this.random = new SplittableRandom(seed);
@@ -368,12 +1333,14 @@ public class GibbsLda implements LdaModel {
     public void setAlpha(double[] alpha) {
         this.alpha = alpha;
         this.alphaSum = Arrays.stream(alpha).sum();
+        this.logLikelihoodValid = false;
     }
 
     @Override
     public void setBeta(double[] beta) {
         this.beta = beta;
         this.betaSum = Arrays.stream(beta).sum();
+        this.logLikelihoodValid = false;
     }
 
     @Override
@@ -383,6 +1350,7 @@ public class GibbsLda implements LdaModel {
             this.alpha[i] = alphaSymmetric;
             this.alphaSum += alphaSymmetric;
         }
+        this.logLikelihoodValid = false;
     }
 
     @Override
@@ -392,5 +1360,6 @@ public class GibbsLda implements LdaModel {
             this.beta[i] = betaSymmetric;
             this.betaSum += betaSymmetric;
         }
+        this.logLikelihoodValid = false;
     }
 }
@@ -1,115 +1,554 @@
 package tu.dortmund.lda.sampler;
 
+import tu.dortmund.lda.corpus.Corpus;
 import tu.dortmund.lda.data_structure.AliasTable;
+import tu.dortmund.lda.data_structure.CompactAliasTable;
+import tu.dortmund.lda.data_structure.DocTopicBuffer;
+import tu.dortmund.lda.data_structure.ProposalTable;
+import tu.dortmund.lda.data_structure.SparseAliasTable;
+import tu.dortmund.lda.metrics.IterationMetrics;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
 
 public class LightLda extends GibbsLda {
 
     public static final int MH_STEPS = 2;
 
-    AliasTable[] aliasTables;
+    /**
+     * The alias table of every word. It is an AliasTable by default, a
+     * CompactAliasTable with compact storage and a SparseAliasTable if
+     * {@link #setSparseAliasTables(boolean)} is enabled.
+     */
+    ProposalTable[] aliasTables;
+
+    /**
+     * The smoothing table that all sparse alias tables share, null for dense
+     * tables.
+     */
+    AliasTable smoothingTable;
+
+    private boolean useSparseAliasTables = false;
+    private boolean asyncAliasTableRebuilding = false;
+
+    /**
+     * Rebuilds the tables of the single threaded sweep in the background, null if
+     * the tables are rebuilt inline or if it was not created yet.
+     */
+    private AliasTableRebuilder<ProposalTable> rebuilder;
+
+    /**
+     * Number of words per vocabulary slice, 0 if the whole vocabulary is sampled
+     * at once.
+     */
+    private int sliceSize = 0;
+
+    /**
+     * The first word of the current slice. aliasTables[i] is the table of word
+     * sliceStart + i.
+     */
+    private int sliceStart = 0;
+
+    /**
+     * The tokens of all documents sorted by word, only in the sliced mode and in
+     * the heap. Out of core the order is built for every block of documents.
+     */
+    private WordOrder wordOrder;
 
     public LightLda(int[][] documents, int vocabularySize, int k) {
         super(documents, vocabularySize, k);
     }
 
-    @Override
-    public void initialize() {
-        super.initializeCountMatrices();
+    public LightLda(Corpus documents, int vocabularySize, int k) {
+        super(documents, vocabularySize, k);
+    }
 
-        this.aliasTables = new AliasTable[vocabularySize];
+    /**
+     * If enabled, the single threaded sweep does not rebuild a stale alias table
+     * itself. It requests the rebuild from a background thread and keeps
+     * sampling from the old table until the new one is swapped in. Disabled by
+     * default. The parallel sweep always rebuilds the tables after the merge.
+     */
+    public void setAsyncAliasTableRebuilding(boolean asyncAliasTableRebuilding) {
+        this.asyncAliasTableRebuilding = asyncAliasTableRebuilding;
+        this.rebuilder = null;
+    }
+
+    /**
+     * If enabled, the alias table of a word only covers the topics with a nonzero
+     * count of the word. The part of the proposal that comes from beta is drawn
+     * from a single dense smoothing table, which all words share, so the tables
+     * need O(nonzero counts + numTopics) instead of O(vocabularySize * numTopics)
+     * memory. Disabled by default.
+     */
+    public void setSparseAliasTables(boolean sparseAliasTables) {
+        this.useSparseAliasTables = sparseAliasTables;
+        if (aliasTables != null) {
+            initializeSamplingStructures();
+        }
+    }
+
+    /**
+     * Samples the corpus in slices of the vocabulary, as in LightLDA. A sweep
+     * visits the slices one after another and each pass only samples the tokens
+     * whose word falls into the current slice. The alias tables are built for
+     * the words of the current slice only, so they need O(sliceSize * numTopics)
+     * instead of O(vocabularySize * numTopics) memory, and a pass only touches
+     * the rows of matTopicWord of the current slice. The asynchronous alias table
+     * rebuilding is not used in this mode.
+     *
+     * In the heap matTopicWord still holds all words. Together with
+     * {@link #setOutOfCore(java.nio.file.Path, int)} the counts stay in the
+     * memory mapped file, where the rows of a slice are contiguous, and every
+     * block of documents is sampled slice by slice as in the data blocks and
+     * model slices of LightLDA. The heap then only holds the tables of one slice
+     * and the tokens of one block.
+     *
+     * @param sliceSize Number of words per slice, 0 to sample the whole
+     *                  vocabulary at once (the default).
+     */
+    public void setVocabularySliceSize(int sliceSize) {
+        if (sliceSize < 0) {
+            throw new IllegalArgumentException("Slice size must not be negative: " + sliceSize);
+        }
+        this.sliceSize = sliceSize;
+        if (aliasTables != null) {
+            initializeSamplingStructures();
+        }
+    }
+
+    @Override
+    protected void initializeSamplingStructures() {
+        this.rebuilder = null;
+        this.smoothingTable = null;
+        this.sliceStart = 0;
+        this.wordOrder = null;
+        if (useSparseAliasTables) {
+            this.smoothingTable = new AliasTable(numTopics);
+            updateSmoothingTable();
+        }
+        if (sliceSize > 0) {
+            // the tables are reused for every slice and built when the slice is loaded
+            this.aliasTables = new ProposalTable[Math.min(sliceSize, vocabularySize)];
+            for (int i = 0; i < aliasTables.length; i++) {
+                aliasTables[i] = createAliasTable(i);
+            }
+            if (topicAssignments == null) {
+                wordOrder = new WordOrder(documents, 0, documents.getNumDocuments());
+            }
+            return;
+        }
+        this.aliasTables = new ProposalTable[vocabularySize];
         for (int w = 0; w < vocabularySize; w++) {
-            aliasTables[w] = new AliasTable(numTopics);
+            aliasTables[w] = createAliasTable(w);
             updateAliasTable(w);
         }
     }
 
+    private ProposalTable createAliasTable(int word) {
+        if (smoothingTable != null) {
+            return new SparseAliasTable(smoothingTable, beta[word]);
+        } else if (compactStorage) {
+            return new CompactAliasTable(numTopics);
+        }
+        return new AliasTable(numTopics);
+    }
+
     private void updateAliasTable(int word) {
-        AliasTable at = aliasTables[word];
+        ProposalTable at = aliasTables[word - sliceStart];
         at.resetSampleCount();
+        buildAliasTable(word, at);
+    }
+
+    private void buildAliasTable(int word, ProposalTable at) {
+        if (at instanceof SparseAliasTable) {
+            buildSparseAliasTable(word, (SparseAliasTable) at);
+        } else if (at instanceof CompactAliasTable) {
+            buildCompactAliasTable(word, (CompactAliasTable) at);
+        } else {
+            buildDenseAliasTable(word, (AliasTable) at);
+        }
+    }
+
+    private void buildDenseAliasTable(int word, AliasTable at) {
+        double psum = kernels.wordProbabilities(matTopicWord, word, vecTopic, alpha, beta[word], betaSum, null,
+                at.getUnnormalizedProbability());
+        at.setProbabilitySum(psum);
+        at.construct(kernels);
+    }
+
+    private void buildCompactAliasTable(int word, CompactAliasTable at) {
+        float[] p = at.getUnnormalizedProbability();
         double psum = 0.0;
         for (int t = 0; t < numTopics; t++) {
-            double tmp = alpha[t] * (matTopicWord[t][word] + beta[word]) / (vecTopic[t] + betaSum);
-            at.getUnnormalizedProbability()[t] = tmp;
-            psum += tmp;
+            p[t] = (float) (alpha[t] * (matTopicWord.get(t, word) + beta[word]) / (vecTopic[t] + betaSum));
+            psum += p[t];
         }
         at.setProbabilitySum(psum);
         at.construct();
     }
 
+    /**
+     * alpha_t * (n_tw + beta_w) / (n_t + betaSum) is split into the sparse part
+     * alpha_t * n_tw / (n_t + betaSum) and beta_w times the smoothing part.
+     */
+    private void buildSparseAliasTable(int word, SparseAliasTable at) {
+        at.clear();
+        at.setSmoothingWeight(beta[word]);
+        for (int t = 0; t < numTopics; t++) {
+            int count = matTopicWord.get(t, word);
+            if (count > 0) {
+                at.add(t, alpha[t] * count / (vecTopic[t] + betaSum));
+            }
+        }
+        at.construct();
+    }
+
+    private void updateSmoothingTable() {
+        smoothingTable.resetSampleCount();
+        double psum = kernels.smoothingProbabilities(vecTopic, alpha, betaSum,
+                smoothingTable.getUnnormalizedProbability());
+        smoothingTable.setProbabilitySum(psum);
+        smoothingTable.construct(kernels);
+    }
+
+    /**
+     * Positions of the tokens of a range of documents sorted by word (CSR). The
+     * tokens of document firstDocument + d are tokensByWord[ documentOffsets[d] ]
+     * to tokensByWord[ documentOffsets[d+1]-1 ].
+     */
+    private static class WordOrder {
+        private final int firstDocument;
+        private final int[] documentOffsets;
+        private final int[] tokensByWord;
+
+        /**
+         * Sorts the token positions of every document by word.
+         */
+        WordOrder(Corpus documents, int firstDocument, int lastDocument) {
+            this.firstDocument = firstDocument;
+            int numDocuments = lastDocument - firstDocument;
+            documentOffsets = new int[numDocuments + 1];
+            for (int d = 0; d < numDocuments; d++) {
+                documentOffsets[d + 1] = documentOffsets[d] + documents.getDocumentLength(firstDocument + d);
+            }
+            tokensByWord = new int[documentOffsets[numDocuments]];
+            long[] keys = new long[0];
+            for (int d = 0; d < numDocuments; d++) {
+                int document = firstDocument + d;
+                int length = documents.getDocumentLength(document);
+                if (keys.length < length) {
+                    keys = new long[Math.max(length, 2 * keys.length)];
+                }
+                for (int token = 0; token < length; token++) {
+                    keys[token] = (long) documents.getWord(document, token) << 32 | token;
+                }
+                Arrays.sort(keys, 0, length);
+                for (int token = 0; token < length; token++) {
+                    tokensByWord[documentOffsets[d] + token] = (int) keys[token];
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The word order of the documents of a block, see
+     *         {@link GibbsLda#forEachBlock(boolean, PartitionTask)}.
+     */
+    private WordOrder getWordOrder(int firstDocument, int lastDocument) {
+        return wordOrder != null ? wordOrder : new WordOrder(documents, firstDocument, lastDocument);
+    }
+
     @Override
     protected void fullCorpusSweep() {
-        for (int document = 0; document < documents.length; document++) {
-            double sumPd = documents[document].length + alphaSum;
-            for (int wi = 0; wi < documents[document].length; wi++) {
-                int word = documents[document][wi];
-                int topic = matZ[document][wi];
-
-                decrementCountMatrices(document, word, topic);  
-
-                int oldTopic = topic;
-                int newTopic = -1;
-                for (int mhStep = 0; mhStep < MH_STEPS; mhStep++) {
-
-                    // Document-Proposal
-                    int u = (int)(random.nextDouble() * sumPd);
-                    newTopic = u < documents[document].length ? matZ[document][u] : random.nextInt(numTopics);
-                    
-                    if(topic != newTopic) {
-                        double probabilityOfTopic = (matDocTopic[document][topic] + alpha[topic]);
-                        double probabilityOfWordInTopic = (matTopicWord[topic][word] + beta[word])
-                                / (vecTopic[topic] + betaSum);
-                        double proposalTopic = topic == oldTopic ? probabilityOfTopic + 1 : probabilityOfTopic;
-
-                        double probabilityOfNewTopic = matDocTopic[document][newTopic] + alpha[newTopic];
-                        double probabilityOfWordInNewTopic = (matTopicWord[newTopic][word] + beta[word])
-                                / (vecTopic[newTopic] + betaSum);
-                        double proposalNewTopic = newTopic == oldTopic ? probabilityOfNewTopic + 1 : probabilityOfNewTopic;
-
-                        double acceptance = (probabilityOfNewTopic * probabilityOfWordInNewTopic * proposalTopic) 
-                        / (probabilityOfTopic * probabilityOfWordInTopic * proposalNewTopic);
+        if (sliceSize > 0) {
+            forEachBlock(true, (block, firstDocument, lastDocument) -> {
+                WordOrder order = getWordOrder(firstDocument, lastDocument);
+                int[] nextTokens = new int[lastDocument - firstDocument];
+                for (int first = 0; first < vocabularySize; first += sliceSize) {
+                    int end = Math.min(first + sliceSize, vocabularySize);
+                    loadSlice(first, end, null);
+                    sampleSlice(order, firstDocument, lastDocument, end, nextTokens);
+                }
+            });
+            return;
+        }
+        if (!asyncAliasTableRebuilding) {
+            super.fullCorpusSweep();
+            return;
+        }
+        if (rebuilder == null) {
+            rebuilder = new AliasTableRebuilder<ProposalTable>(aliasTables, this::buildAliasTable,
+                    this::createAliasTable);
+        }
+        rebuilder.start();
+        try {
+            super.fullCorpusSweep();
+        } finally {
+            rebuilder.stop();
+        }
+        long rebuilds = rebuilder.takeNumRebuilds();
+        if (metrics != null) {
+            metrics.countAliasTableRebuilds((int) rebuilds);
+        }
+    }
 
-                        if(random.nextDouble() < acceptance) {
-                            topic = newTopic;
-                        }
-                    }
+    /**
+     * Only the tables of the changed words are rebuilt. The other tables are
+     * slightly outdated since vecTopic changed, but they are still valid
+     * proposals and get rebuilt after numTopics samples anyway.
+     */
+    @Override
+    protected void updateSamplingStructures(boolean[] changedWords) {
+        if (smoothingTable != null) {
+            updateSmoothingTable();
+        }
+        if (sliceSize > 0) {
+            // the tables of the slices are built in the next sweep
+            if (topicAssignments == null) {
+                wordOrder = new WordOrder(documents, 0, documents.getNumDocuments());
+            }
+            return;
+        }
+        for (int w = 0; w < vocabularySize; w++) {
+            if (changedWords[w]) {
+                updateAliasTable(w);
+            }
+        }
+    }
 
-                    // Word-Proposal
-                    AliasTable wordTable = aliasTables[word];
-                    if(wordTable.getSampleCount() >= numTopics) {
-                        updateAliasTable(word);
-                    }
-                    newTopic = wordTable.sample(random);
-
-                    if(topic != newTopic) {
-                        double probabilityOfTopic = (matDocTopic[document][topic] + alpha[topic]);
-                        double probabilityOfWordInTopic = (matTopicWord[topic][word] + beta[word])
-                                / (vecTopic[topic] + betaSum);
-                        double proposalTopic = topic == oldTopic
-                        ? probabilityOfWordInTopic + (1 / (vecTopic[topic] + betaSum))
-                        : probabilityOfWordInTopic;
-
-                        double probabilityOfNewTopic = matDocTopic[document][newTopic] + alpha[newTopic];
-                        double probabilityOfWordInNewTopic = (matTopicWord[newTopic][word] + beta[word])
-                                / (vecTopic[newTopic] + betaSum);
-                        double proposalNewTopic = newTopic == oldTopic
-                        ? probabilityOfWordInNewTopic + (1 / (vecTopic[newTopic] + betaSum))
-                        : probabilityOfWordInNewTopic;
-
-                        double acceptance = (probabilityOfNewTopic * probabilityOfWordInNewTopic * proposalTopic)
-                                / (probabilityOfTopic * probabilityOfWordInTopic * proposalNewTopic);
-
-                        if (random.nextDouble() < acceptance) {
-                            topic = newTopic;
-                        }
+    @Override
+    protected void mergeWorkers(GibbsLda[] workers, ExecutorService executor) {
+        super.mergeWorkers(workers, executor);
+        if (sliceSize > 0) {
+            // the tables are built slice by slice in the next sweep
+            return;
+        }
+        // the workers share the alias tables and therefore never rebuild them
+        if (smoothingTable != null) {
+            updateSmoothingTable();
+        }
+        forEachPartition(executor, vocabularySize, (partition, first, last) -> {
+            for (int w = first; w < last; w++) {
+                updateAliasTable(w);
+            }
+        });
+        if (metrics != null) {
+            metrics.countAliasTableRebuilds(vocabularySize);
+        }
+    }
+
+    @Override
+    protected void sampleDocuments(int firstDocument, int lastDocument) {
+        // a local copy lets the JIT compiler hoist the null checks out of the loops
+        IterationMetrics metrics = this.metrics;
+        AliasTableRebuilder<ProposalTable> rebuilder = isWorker ? null : this.rebuilder;
+        // dense copy of the counts of the current document
+        DocTopicBuffer docTopic = new DocTopicBuffer(numTopics);
+
+        for (int document = firstDocument; document < lastDocument; document++) {
+            docTopic.load(matDocTopic, document);
+
+            double sumPd = documents.getDocumentLength(document) + alphaSum;
+            for (int wi = 0; wi < documents.getDocumentLength(document); wi++) {
+                int word = documents.getWord(document, wi);
+                sampleToken(docTopic, document, wi, word, sumPd, metrics, rebuilder);
+            }
+
+            docTopic.store(matDocTopic, document);
+        }
+    }
+
+    /**
+     * Samples the tokens whose word is in [firstWord, sliceEnd) of the given
+     * documents, where firstWord is the end of the previous slice. nextTokens
+     * holds, for every document of the order, the index of the first token
+     * that was not sampled yet and is advanced past the tokens of the slice.
+     */
+    private void sampleSlice(WordOrder order, int firstDocument, int lastDocument, int sliceEnd, int[] nextTokens) {
+        // a local copy lets the JIT compiler hoist the null checks out of the loops
+        IterationMetrics metrics = this.metrics;
+        // dense copy of the counts of the current document
+        DocTopicBuffer docTopic = new DocTopicBuffer(numTopics);
+
+        int[] tokensByWord = order.tokensByWord;
+        for (int document = firstDocument; document < lastDocument; document++) {
+            int d = document - order.firstDocument;
+            int offset = order.documentOffsets[d];
+            int length = order.documentOffsets[d + 1] - offset;
+            int next = nextTokens[d];
+            if (next == length || documents.getWord(document, tokensByWord[offset + next]) >= sliceEnd) {
+                continue;
+            }
+            docTopic.load(matDocTopic, document);
+
+            double sumPd = length + alphaSum;
+            for (; next < length; next++) {
+                int wi = tokensByWord[offset + next];
+                int word = documents.getWord(document, wi);
+                if (word >= sliceEnd) {
+                    break;
+                }
+                sampleToken(docTopic, document, wi, word, sumPd, metrics, null);
+            }
+            nextTokens[d] = next;
+
+            docTopic.store(matDocTopic, document);
+        }
+    }
+
+    /**
+     * Builds the alias tables of the words [first, end) and makes them the
+     * current slice.
+     *
+     * @param executor Executor that builds the tables in parallel, null to build
+     *                 them on the calling thread.
+     */
+    private void loadSlice(int first, int end, ExecutorService executor) {
+        sliceStart = first;
+        if (smoothingTable != null) {
+            updateSmoothingTable();
+        }
+        if (executor == null) {
+            for (int w = first; w < end; w++) {
+                updateAliasTable(w);
+            }
+        } else {
+            forEachPartition(executor, end - first, (partition, firstIndex, lastIndex) -> {
+                for (int w = first + firstIndex; w < first + lastIndex; w++) {
+                    updateAliasTable(w);
+                }
+            });
+        }
+        if (metrics != null) {
+            metrics.countAliasTableRebuilds(end - first);
+        }
+    }
+
+    /**
+     * In the sliced mode the workers sample every block slice by slice as well.
+     * Every slice is loaded by this model from the global counts, and the
+     * workers share its alias tables.
+     */
+    @Override
+    protected void parallelCorpusSweep(ExecutorService executor) {
+        if (sliceSize == 0) {
+            super.parallelCorpusSweep(executor);
+            return;
+        }
+        LightLda[] workers = new LightLda[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            workers[i] = (LightLda) createWorker();
+        }
+        forEachBlock(true, (block, firstDocument, lastDocument) -> {
+            WordOrder order = getWordOrder(firstDocument, lastDocument);
+            // every document belongs to exactly one worker
+            int[] nextTokens = new int[lastDocument - firstDocument];
+            for (int first = 0; first < vocabularySize; first += sliceSize) {
+                int end = Math.min(first + sliceSize, vocabularySize);
+                loadSlice(first, end, executor);
+                for (LightLda worker : workers) {
+                    worker.sliceStart = first;
+                }
+                forEachPartition(executor, lastDocument - firstDocument, (partition, firstIndex, lastIndex) -> {
+                    workers[partition].sampleSlice(order, firstDocument + firstIndex, firstDocument + lastIndex,
+                            end, nextTokens);
+                });
+            }
+        });
+        mergeWorkers(workers, executor);
+    }
+
+    /**
+     * Runs the Metropolis Hastings chain of a single token with alternating
+     * document and word proposals.
+     */
+    private void sampleToken(DocTopicBuffer docTopic, int document, int wi, int word, double sumPd,
+            IterationMetrics metrics, AliasTableRebuilder<ProposalTable> rebuilder) {
+        int topic = matZ[document][wi];
+
+        decrementCountMatrices(docTopic, word, topic);  
+
+        int oldTopic = topic;
+        int newTopic = -1;
+        for (int mhStep = 0; mhStep < MH_STEPS; mhStep++) {
+
+            // Document-Proposal
+            int u = (int)(random.nextDouble() * sumPd);
+            newTopic = u < documents.getDocumentLength(document) ? matZ[document][u] : random.nextInt(numTopics);
+            
+            if(topic != newTopic) {
+                double probabilityOfTopic = (docTopic.get(topic) + alpha[topic]);
+                double probabilityOfWordInTopic = (matTopicWord.get(topic, word) + beta[word])
+                        / (vecTopic[topic] + betaSum);
+                double proposalTopic = topic == oldTopic ? probabilityOfTopic + 1 : probabilityOfTopic;
+
+                double probabilityOfNewTopic = docTopic.get(newTopic) + alpha[newTopic];
+                double probabilityOfWordInNewTopic = (matTopicWord.get(newTopic, word) + beta[word])
+                        / (vecTopic[newTopic] + betaSum);
+                double proposalNewTopic = newTopic == oldTopic ? probabilityOfNewTopic + 1 : probabilityOfNewTopic;
+
+                double acceptance = (probabilityOfNewTopic * probabilityOfWordInNewTopic * proposalTopic) 
+                / (probabilityOfTopic * probabilityOfWordInTopic * proposalNewTopic);
+
+                if(random.nextDouble() < acceptance) {
+                    topic = newTopic;
+                }
+            }
+            if (metrics != null) {
+                metrics.countDocumentProposal(topic == newTopic);
+            }
+
+            // Word-Proposal
+            ProposalTable wordTable = rebuilder == null ? aliasTables[word - sliceStart] : rebuilder.get(word);
+            if(!isWorker && wordTable.getSampleCount() >= numTopics) {
+                if (rebuilder != null) {
+                    rebuilder.request(word);
+                } else {
+                    updateAliasTable(word);
+                    if (metrics != null) {
+                        metrics.countAliasTableRebuilds(1);
                     }
                 }
+            }
+            if (smoothingTable != null && !isWorker && smoothingTable.getSampleCount() >= numTopics) {
+                updateSmoothingTable();
+                if (metrics != null) {
+                    metrics.countAliasTableRebuilds(1);
+                }
+            }
+            newTopic = wordTable.sample(random);
+
+            if(topic != newTopic) {
+                double probabilityOfTopic = (docTopic.get(topic) + alpha[topic]);
+                double probabilityOfWordInTopic = (matTopicWord.get(topic, word) + beta[word])
+                        / (vecTopic[topic] + betaSum);
+                double proposalTopic = topic == oldTopic
+                ? probabilityOfWordInTopic + (1 / (vecTopic[topic] + betaSum))
+                : probabilityOfWordInTopic;
 
-                incrementCountMatrices(document, word, topic);
+                double probabilityOfNewTopic = docTopic.get(newTopic) + alpha[newTopic];
+                double probabilityOfWordInNewTopic = (matTopicWord.get(newTopic, word) + beta[word])
+                        / (vecTopic[newTopic] + betaSum);
+                double proposalNewTopic = newTopic == oldTopic
+                ? probabilityOfWordInNewTopic + (1 / (vecTopic[newTopic] + betaSum))
+                : probabilityOfWordInNewTopic;
+
+                double acceptance = (probabilityOfNewTopic * probabilityOfWordInNewTopic * proposalTopic)
+                        / (probabilityOfTopic * probabilityOfWordInTopic * proposalNewTopic);
 
-                matZ[document][wi] = topic;
+                if (random.nextDouble() < acceptance) {
+                    topic = newTopic;
+                }
+            }
+            if (metrics != null) {
+                metrics.countWordProposal(topic == newTopic);
             }
         }
+
+        incrementCountMatrices(docTopic, word, topic);
+
+        matZ[document][wi] = topic;
     }
 }
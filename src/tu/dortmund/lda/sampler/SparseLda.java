@@ -1,6 +1,12 @@
 package tu.dortmund.lda.sampler;
 
+import java.util.concurrent.ExecutorService;
+
+import tu.dortmund.lda.ParallelMode;
+import tu.dortmund.lda.corpus.Corpus;
+import tu.dortmund.lda.data_structure.DocTopicBuffer;
 import tu.dortmund.lda.data_structure.SortedTopicList;
+import tu.dortmund.lda.metrics.IterationMetrics;
 
 public class SparseLda extends GibbsLda {
 
@@ -12,63 +18,117 @@ public class SparseLda extends GibbsLda {
         super(documents, vocabularySize, k);
     }
 
+    public SparseLda(Corpus documents, int vocabularySize, int k) {
+        super(documents, vocabularySize, k);
+    }
+
     @Override
-    public void initialize() {
-        super.initializeCountMatrices();
+    protected void initializeSamplingStructures() {
+        nonzeroTopicTerm = new SortedTopicList[vocabularySize];
+        initializeNonzeroTopicTerm(0, vocabularySize);
+        initializeBuckets();
+    }
 
+    private void initializeNonzeroTopicTerm(int firstWord, int lastWord) {
         // create data structure to find for each word the topics that assigns it at least once
         // sort topics in descending order by how often the assign the word
-        nonzeroTopicTerm = new SortedTopicList[vocabularySize];
+        for (int w = firstWord; w < lastWord; w++) {
+            initializeNonzeroTopicTerm(w);
+        }
+    }
+
+    private void initializeNonzeroTopicTerm(int w) {
+        // a word can have at most as many nonzero topics as occurrences
+        int wordFrequency = 0;
+        for (int t = 0; t < numTopics; t++) {
+            wordFrequency += matTopicWord.get(t, w);
+        }
+        SortedTopicList list = new SortedTopicList(numTopics, Math.min(numTopics, wordFrequency));
+        for (int t = 0; t < numTopics; t++) {
+            if(matTopicWord.get(t, w) > 0.0){
+                list.addTopic(t, matTopicWord.get(t, w));
+            }
+        }
+        list.sort();
+        nonzeroTopicTerm[w] = list;
+    }
+
+    @Override
+    protected void updateSamplingStructures(boolean[] changedWords) {
         for (int w = 0; w < vocabularySize; w++) {
-            SortedTopicList list = new SortedTopicList(numTopics);
-            for (int t = 0; t < numTopics; t++) {
-                if(matTopicWord[t][w] > 0.0){
-                    list.addTopic(t, matTopicWord[t][w]);
-                }
+            if (changedWords[w]) {
+                initializeNonzeroTopicTerm(w);
             }
-            list.sort();
-            nonzeroTopicTerm[w] = list;
         }
+        initializeBuckets();
+    }
 
+    private void initializeBuckets() {
         // compute the ssum bucket and the part of qDocSpecific that is not document specific
         qDoc = new double[numTopics];
-        ssum = 0.0;
-        for (int t = 0; t < numTopics; t++) {
-            qDoc[t] = alpha[t] / (vecTopic[t] + betaSum);
-            ssum += qDoc[t];
+        ssum = kernels.smoothingProbabilities(vecTopic, alpha, betaSum, qDoc);
+    }
+
+    @Override
+    public void setParallelMode(ParallelMode parallelMode) {
+        // the sorted topic lists are not thread safe and can therefore not be shared
+        if (parallelMode != ParallelMode.DATA_PARALLEL) {
+            throw new UnsupportedOperationException("SparseLda supports only the DATA_PARALLEL mode");
+        }
+        super.setParallelMode(parallelMode);
+    }
+
+    @Override
+    protected GibbsLda createWorker() {
+        SparseLda worker = (SparseLda) super.createWorker();
+        worker.nonzeroTopicTerm = new SortedTopicList[vocabularySize];
+        for (int w = 0; w < vocabularySize; w++) {
+            worker.nonzeroTopicTerm[w] = new SortedTopicList(nonzeroTopicTerm[w]);
         }
+        worker.qDoc = qDoc.clone();
+        return worker;
     }
 
     @Override
-    protected void fullCorpusSweep() {
+    protected void mergeWorkers(GibbsLda[] workers, ExecutorService executor) {
+        super.mergeWorkers(workers, executor);
+        forEachPartition(executor, vocabularySize, (partition, first, last) -> {
+            initializeNonzeroTopicTerm(first, last);
+        });
+        initializeBuckets();
+    }
+
+    @Override
+    protected void sampleDocuments(int firstDocument, int lastDocument) {
+        // a local copy lets the JIT compiler hoist the null checks out of the loops
+        IterationMetrics metrics = this.metrics;
         double[] q = new double[numTopics];
+        // dense copy of the counts of the current document
+        DocTopicBuffer docTopic = new DocTopicBuffer(numTopics);
+
+        for (int document = firstDocument; document < lastDocument; document++) {
+            docTopic.load(matDocTopic, document);
 
-        for (int document = 0; document < documents.length; document++) {
             // compute document specific bucket rsum and add document specific information to qDocSpecific
-            double rsum = 0.0;
-            for (int t = 0; t < numTopics; t++) {
-                double tmp = matDocTopic[document][t] / (vecTopic[t] + betaSum);
-                rsum += tmp;
-                qDoc[t] += tmp;
-            }
+            double rsum = kernels.addDocumentProbabilities(docTopic.getCounts(), vecTopic, betaSum, 1.0, qDoc);
 
-            for (int token = 0; token < documents[document].length; token++) {
-                int word = documents[document][token];
+            for (int token = 0; token < documents.getDocumentLength(document); token++) {
+                int word = documents.getWord(document, token);
                 int topic = matZ[document][token];
 
                 rsum *= beta[word];
                 ssum *= beta[word];
 
-                super.decrementCountMatrices(document, word, topic);
+                super.decrementCountMatrices(docTopic, word, topic);
 
                 // update bucket sums (since we have just decremented the count matrices)
                 double alphaTimesBeta = alpha[topic] * beta[word];
                 double denominator = betaSum + vecTopic[topic];
                 ssum -= alphaTimesBeta / (denominator + 1);
                 ssum += alphaTimesBeta / denominator;
-                rsum -= ((matDocTopic[document][topic] + 1) * beta[word]) / (denominator + 1);
-                rsum += (matDocTopic[document][topic] * beta[word]) / denominator;
-                qDoc[topic] = (alpha[topic] + matDocTopic[document][topic]) / denominator;
+                rsum -= ((docTopic.get(topic) + 1) * beta[word]) / (denominator + 1);
+                rsum += (docTopic.get(topic) * beta[word]) / denominator;
+                qDoc[topic] = (alpha[topic] + docTopic.get(topic)) / denominator;
 
                 // compute qsum bucket
                 double qsum = 0.0;
@@ -88,6 +148,9 @@ public class SparseLda extends GibbsLda {
 
                 // sample new topic assignment with the sparse lda method
                 double u = random.nextDouble() * normalizingConstant;
+                if (metrics != null) {
+                    metrics.countBucketHit(u < ssum ? 0 : u < ssum + rsum ? 1 : 2);
+                }
                 if(u < ssum) {
                     u /= beta[word];
                     for (int t = 0; t < numTopics; t++) {
@@ -101,8 +164,9 @@ public class SparseLda extends GibbsLda {
                 else if(u < (ssum + rsum)) {
                     u -= ssum;
                     u /= beta[word];
-                    for (int t = 0; t < numTopics; t++) {
-                        u -= matDocTopic[document][t] / (vecTopic[t] + betaSum);
+                    for (int i = 0; i < docTopic.getNumNonzero(); i++) {
+                        int t = docTopic.getNonzeroTopic(i);
+                        u -= docTopic.get(t) / (vecTopic[t] + betaSum);
                         if(u <= 0){
                             topic = t;
                             break;
@@ -132,12 +196,12 @@ public class SparseLda extends GibbsLda {
                 denominator = betaSum + vecTopic[topic];
                 ssum -= alphaTimesBeta / denominator;
                 ssum += alphaTimesBeta / (denominator + 1);
-                rsum -= (matDocTopic[document][topic] * beta[word]) / denominator;
-                rsum += ((matDocTopic[document][topic] + 1) * beta[word]) / (denominator + 1);
-                qDoc[topic] = (alpha[topic] + matDocTopic[document][topic] + 1) / (denominator + 1);
+                rsum -= (docTopic.get(topic) * beta[word]) / denominator;
+                rsum += ((docTopic.get(topic) + 1) * beta[word]) / (denominator + 1);
+                qDoc[topic] = (alpha[topic] + docTopic.get(topic) + 1) / (denominator + 1);
 
 
-                super.incrementCountMatrices(document, word, topic);
+                super.incrementCountMatrices(docTopic, word, topic);
 
                 matZ[document][token] = topic;
 
@@ -146,9 +210,9 @@ public class SparseLda extends GibbsLda {
             }
 
             // remove document specific information from qDocSpecific
-            for (int t = 0; t < numTopics; t++) {
-                qDoc[t] -= matDocTopic[document][t] / (vecTopic[t] + betaSum);
-            }
+            kernels.addDocumentProbabilities(docTopic.getCounts(), vecTopic, betaSum, -1.0, qDoc);
+
+            docTopic.store(matDocTopic, document);
         }
     }
 }
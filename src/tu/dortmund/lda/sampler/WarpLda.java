@@ -0,0 +1,442 @@
+package tu.dortmund.lda.sampler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import tu.dortmund.lda.convergence.ModelSnapshot;
+import tu.dortmund.lda.corpus.Corpus;
+import tu.dortmund.lda.data_structure.AliasTable;
+import tu.dortmund.lda.data_structure.WordOccurrenceIndex;
+import tu.dortmund.lda.metrics.IterationMetrics;
+
+/**
+ * The WarpLDA algorithm. It uses the same Metropolis Hastings proposals as
+ * LightLDA, but one iteration is split into a word phase and a document phase.
+ * The word phase visits the tokens word by word, accepts or rejects the
+ * document proposals and draws new word proposals. The document phase visits
+ * the tokens document by document, accepts or rejects the word proposals and
+ * draws new document proposals. The word topic counts and document topic counts
+ * that a phase needs are computed on the fly from the topic assignments of the
+ * visited tokens, and the topic counts are only updated at the end of a phase
+ * (delayed updates). Therefore the sampler never accesses matTopicWord or
+ * matDocTopic randomly. Both matrices are only rebuilt when they are requested
+ * from outside.
+ */
+public class WarpLda extends GibbsLda {
+
+    public static final int MH_STEPS = 2;
+
+    /**
+     * Topic assignment of every token in document order (CSR). tokenTopics[
+     * documentOffsets[d] + i ] is the topic of the i-th token of document d.
+     */
+    private int[] tokenTopics;
+    private int[] documentOffsets;
+
+    /**
+     * The occurrences of every word, which the word phase visits. The position
+     * of an occurrence in tokenTopics is documentOffsets[document] + token.
+     */
+    private WordOccurrenceIndex wordOccurrences;
+
+    /**
+     * MH_STEPS proposals for every token in document order. The word phase
+     * consumes document proposals and stores word proposals, the document phase
+     * does it the other way round.
+     */
+    private int[] proposals;
+
+    /**
+     * Changes of vecTopic during the current phase. They are applied when the
+     * phase is finished.
+     */
+    private int[] topicDelta;
+
+    private AliasTable alphaTable;
+    private AliasTable wordTable;
+    private int[] localCounts;
+    private int[] touchedTopics;
+
+    /**
+     * False if the topic assignments changed since matZ, matTopicWord and
+     * matDocTopic were rebuilt the last time.
+     */
+    private boolean countMatricesSynchronized = true;
+
+    public WarpLda(int[][] documents, int vocabularySize, int k) {
+        super(documents, vocabularySize, k);
+    }
+
+    public WarpLda(Corpus documents, int vocabularySize, int k) {
+        super(documents, vocabularySize, k);
+    }
+
+    @Override
+    protected void initializeSamplingStructures() {
+        documentOffsets = new int[documents.getNumDocuments() + 1];
+        for (int document = 0; document < documents.getNumDocuments(); document++) {
+            documentOffsets[document + 1] = documentOffsets[document] + documents.getDocumentLength(document);
+        }
+        tokenTopics = new int[numTokens];
+        for (int document = 0; document < documents.getNumDocuments(); document++) {
+            System.arraycopy(matZ[document], 0, tokenTopics, documentOffsets[document], matZ[document].length);
+        }
+        wordOccurrences = new WordOccurrenceIndex(documents, vocabularySize);
+
+        alphaTable = new AliasTable(numTopics);
+        buildAlphaTable();
+        wordTable = new AliasTable(numTopics);
+
+        topicDelta = new int[numTopics];
+        localCounts = new int[numTopics];
+        touchedTopics = new int[numTopics];
+
+        // the first word phase needs document proposals
+        proposals = new int[numTokens * MH_STEPS];
+        for (int document = 0; document < documents.getNumDocuments(); document++) {
+            drawDocumentProposals(document);
+        }
+        countMatricesSynchronized = true;
+    }
+
+    private void buildAlphaTable() {
+        System.arraycopy(alpha, 0, alphaTable.getUnnormalizedProbability(), 0, numTopics);
+        alphaTable.setProbabilitySum(alphaSum);
+        alphaTable.construct();
+    }
+
+    /**
+     * The pending document proposals were drawn from the old alpha, so they are
+     * drawn again from the new alpha table.
+     */
+    private void updateAlphaTable() {
+        if (alphaTable == null) {
+            return;
+        }
+        buildAlphaTable();
+        for (int document = 0; document < documents.getNumDocuments(); document++) {
+            drawDocumentProposals(document);
+        }
+    }
+
+    @Override
+    public void setAlpha(double[] alpha) {
+        super.setAlpha(alpha);
+        updateAlphaTable();
+    }
+
+    @Override
+    public void setAlpha(double alphaSymmetric) {
+        super.setAlpha(alphaSymmetric);
+        updateAlphaTable();
+    }
+
+    @Override
+    public void setOutOfCore(Path directory, int documentsPerBlock) {
+        if (directory != null) {
+            throw new UnsupportedOperationException("WarpLda keeps the topic assignments of all tokens in its own arrays and can not run out of core");
+        }
+        super.setOutOfCore(directory, documentsPerBlock);
+    }
+
+    @Override
+    public void setNumThreads(int numThreads) {
+        if (numThreads != 1) {
+            throw new UnsupportedOperationException("WarpLda supports only a single thread");
+        }
+        super.setNumThreads(numThreads);
+    }
+
+    /**
+     * Not supported, since WarpLda derives the topic counts of a word from the
+     * topic assignments of its tokens whenever it visits the word.
+     */
+    @Override
+    public void setTopicWordCounts(int[] words, int[] rows, int[] topicCounts) {
+        throw new UnsupportedOperationException("WarpLda can not sample against external topic word counts");
+    }
+
+    @Override
+    public void setLogLikelihoodTracking(boolean track) {
+        if (track) {
+            throw new UnsupportedOperationException("WarpLda updates the counts in batches and can not track the log likelihood");
+        }
+        super.setLogLikelihoodTracking(track);
+    }
+
+    @Override
+    protected void fullCorpusSweep() {
+        countMatricesSynchronized = false;
+        wordPhase();
+        applyTopicDelta();
+        documentPhase();
+        applyTopicDelta();
+    }
+
+    /**
+     * Visits the tokens word by word. The document proposals are accepted with
+     * probability min(1, (cwt + beta) (cs + betaSum) / ((cws + beta) (ct +
+     * betaSum))), where cw are the counts of the current word, s is the current
+     * topic and t the proposed topic. Afterwards new word proposals are drawn from
+     * q(k) ~ cwk + beta.
+     */
+    private void wordPhase() {
+        // a local copy lets the JIT compiler hoist the null checks out of the loops
+        IterationMetrics metrics = this.metrics;
+        for (int word = 0; word < vocabularySize; word++) {
+            int first = wordOccurrences.getFirst(word);
+            int last = wordOccurrences.getEnd(word);
+            if (first == last) {
+                continue;
+            }
+            int numTouched = 0;
+            for (int i = first; i < last; i++) {
+                int topic = tokenTopics[getPosition(i)];
+                if (localCounts[topic]++ == 0) {
+                    touchedTopics[numTouched++] = topic;
+                }
+            }
+
+            for (int i = first; i < last; i++) {
+                int position = getPosition(i);
+                int oldTopic = tokenTopics[position];
+                int topic = oldTopic;
+                for (int mhStep = 0; mhStep < MH_STEPS; mhStep++) {
+                    int newTopic = proposals[position * MH_STEPS + mhStep];
+                    if (newTopic != topic) {
+                        double acceptance = ((localCounts[newTopic] + beta[word]) * (vecTopic[topic] + betaSum))
+                                / ((localCounts[topic] + beta[word]) * (vecTopic[newTopic] + betaSum));
+                        if (random.nextDouble() < acceptance) {
+                            topic = newTopic;
+                        }
+                    }
+                    if (metrics != null) {
+                        metrics.countDocumentProposal(topic == newTopic);
+                    }
+                }
+                if (topic != oldTopic) {
+                    tokenTopics[position] = topic;
+                    topicDelta[oldTopic]--;
+                    topicDelta[topic]++;
+                }
+            }
+
+            for (int i = 0; i < numTouched; i++) {
+                localCounts[touchedTopics[i]] = 0;
+            }
+
+            drawWordProposals(word);
+        }
+    }
+
+    /**
+     * @return The position of an occurrence in tokenTopics.
+     */
+    private int getPosition(int occurrence) {
+        return documentOffsets[wordOccurrences.getDocument(occurrence)] + wordOccurrences.getToken(occurrence);
+    }
+
+    /**
+     * Draws MH_STEPS proposals from q(k) ~ cwk + beta for every token of the word.
+     * For frequent words, the O(K) construction of an alias table amortizes and
+     * keeps the draws inside a compact K-length array. For all other words a
+     * random token of the word is picked, whose topic is distributed according to
+     * cwk.
+     */
+    private void drawWordProposals(int word) {
+        int first = wordOccurrences.getFirst(word);
+        int last = wordOccurrences.getEnd(word);
+        int wordCount = last - first;
+
+        if (wordCount >= numTopics) {
+            double[] q = wordTable.getUnnormalizedProbability();
+            Arrays.fill(q, beta[word]);
+            for (int i = first; i < last; i++) {
+                q[tokenTopics[getPosition(i)]]++;
+            }
+            wordTable.setProbabilitySum(wordCount + numTopics * beta[word]);
+            wordTable.construct();
+            if (metrics != null) {
+                metrics.countAliasTableRebuilds(1);
+            }
+            for (int i = first; i < last; i++) {
+                int position = getPosition(i);
+                for (int mhStep = 0; mhStep < MH_STEPS; mhStep++) {
+                    proposals[position * MH_STEPS + mhStep] = wordTable.sample(random);
+                }
+            }
+        } else {
+            double probabilitySum = wordCount + numTopics * beta[word];
+            for (int i = first; i < last; i++) {
+                int position = getPosition(i);
+                for (int mhStep = 0; mhStep < MH_STEPS; mhStep++) {
+                    double u = random.nextDouble() * probabilitySum;
+                    proposals[position * MH_STEPS + mhStep] = u < wordCount
+                            ? tokenTopics[getPosition(first + (int) u)]
+                            : random.nextInt(numTopics);
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits the tokens document by document. The word proposals are accepted
+     * with probability min(1, (cdt + alphat) (cs + betaSum) / ((cds + alphas) (ct
+     * + betaSum))), where cd are the counts of the current document, s is the
+     * current topic and t the proposed topic. Afterwards new document proposals
+     * are drawn.
+     */
+    private void documentPhase() {
+        // a local copy lets the JIT compiler hoist the null checks out of the loops
+        IterationMetrics metrics = this.metrics;
+        for (int document = 0; document < documents.getNumDocuments(); document++) {
+            int first = documentOffsets[document];
+            int last = documentOffsets[document + 1];
+            int numTouched = 0;
+            for (int position = first; position < last; position++) {
+                int topic = tokenTopics[position];
+                if (localCounts[topic]++ == 0) {
+                    touchedTopics[numTouched++] = topic;
+                }
+            }
+
+            for (int position = first; position < last; position++) {
+                int oldTopic = tokenTopics[position];
+                int topic = oldTopic;
+                for (int mhStep = 0; mhStep < MH_STEPS; mhStep++) {
+                    int newTopic = proposals[position * MH_STEPS + mhStep];
+                    if (newTopic != topic) {
+                        double acceptance = ((localCounts[newTopic] + alpha[newTopic]) * (vecTopic[topic] + betaSum))
+                                / ((localCounts[topic] + alpha[topic]) * (vecTopic[newTopic] + betaSum));
+                        if (random.nextDouble() < acceptance) {
+                            topic = newTopic;
+                        }
+                    }
+                    if (metrics != null) {
+                        metrics.countWordProposal(topic == newTopic);
+                    }
+                }
+                if (topic != oldTopic) {
+                    tokenTopics[position] = topic;
+                    topicDelta[oldTopic]--;
+                    topicDelta[topic]++;
+                }
+            }
+
+            for (int i = 0; i < numTouched; i++) {
+                localCounts[touchedTopics[i]] = 0;
+            }
+
+            drawDocumentProposals(document);
+        }
+    }
+
+    /**
+     * Draws MH_STEPS proposals from q(k) ~ cdk + alphak for every token of the
+     * document. With probability length / (length + alphaSum) the topic of a
+     * random token of the document is used, otherwise a topic is drawn from the
+     * alpha prior.
+     */
+    private void drawDocumentProposals(int document) {
+        int first = documentOffsets[document];
+        int last = documentOffsets[document + 1];
+        int length = last - first;
+        double probabilitySum = length + alphaSum;
+        for (int position = first; position < last; position++) {
+            for (int mhStep = 0; mhStep < MH_STEPS; mhStep++) {
+                double u = random.nextDouble() * probabilitySum;
+                proposals[position * MH_STEPS + mhStep] = u < length
+                        ? tokenTopics[first + (int) u]
+                        : alphaTable.sample(random);
+            }
+        }
+    }
+
+    private void applyTopicDelta() {
+        for (int topic = 0; topic < numTopics; topic++) {
+            vecTopic[topic] += topicDelta[topic];
+            topicDelta[topic] = 0;
+        }
+    }
+
+    /**
+     * Rebuilds matZ, matTopicWord and matDocTopic from the topic assignments if
+     * they are outdated.
+     */
+    private void synchronizeCountMatrices() {
+        if (countMatricesSynchronized) {
+            return;
+        }
+        matTopicWord.clear();
+        for (int document = 0; document < documents.getNumDocuments(); document++) {
+            matDocTopic.clear(document);
+            for (int token = 0; token < documents.getDocumentLength(document); token++) {
+                int topic = tokenTopics[documentOffsets[document] + token];
+                matZ[document][token] = topic;
+                matTopicWord.increment(topic, documents.getWord(document, token));
+                matDocTopic.increment(document, topic);
+            }
+        }
+        countMatricesSynchronized = true;
+    }
+
+    @Override
+    protected ModelSnapshot createSnapshot() {
+        synchronizeCountMatrices();
+        return super.createSnapshot();
+    }
+
+    @Override
+    public double getLogLikelihoodMallet() {
+        synchronizeCountMatrices();
+        return super.getLogLikelihoodMallet();
+    }
+
+    @Override
+    public long getCountDrift() {
+        synchronizeCountMatrices();
+        return super.getCountDrift();
+    }
+
+    /**
+     * The pending proposals are not part of the checkpoint. A restored model
+     * draws new document proposals, so it continues with a different but equally
+     * valid chain.
+     */
+    @Override
+    public void saveCheckpoint(Path path) throws IOException {
+        synchronizeCountMatrices();
+        super.saveCheckpoint(path);
+    }
+
+    @Override
+    public void addDocuments(Corpus newDocuments) {
+        synchronizeCountMatrices();
+        super.addDocuments(newDocuments);
+    }
+
+    @Override
+    public void retireDocuments(int count) {
+        synchronizeCountMatrices();
+        super.retireDocuments(count);
+    }
+
+    @Override
+    public double[][] getTheta() {
+        synchronizeCountMatrices();
+        return super.getTheta();
+    }
+
+    @Override
+    public double[][] getPhi() {
+        synchronizeCountMatrices();
+        return super.getPhi();
+    }
+
+    @Override
+    public int[][] getMatZ() {
+        synchronizeCountMatrices();
+        return super.getMatZ();
+    }
+}
@@ -0,0 +1,77 @@
+package tu.dortmund.lda.server;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import tu.dortmund.lda.corpus.MappedCorpus;
+import tu.dortmund.lda.kernel.Kernels;
+
+/**
+ * Trains a model with a {@link ParameterServer} in this process and one
+ * {@link ParameterServerWorker} process per shard, all on localhost. The
+ * workers run in new JVMs with the class path of this one.
+ *
+ * Usage: LocalCluster corpus sampler numTopics numWorkers iterations staleness
+ * [seed]
+ */
+public class LocalCluster {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 6) {
+            System.err.println("Usage: LocalCluster corpus sampler numTopics numWorkers iterations staleness [seed]");
+            System.exit(1);
+        }
+        String corpusPath = args[0];
+        String sampler = args[1];
+        int numTopics = Integer.parseInt(args[2]);
+        int numWorkers = Integer.parseInt(args[3]);
+        int iterations = Integer.parseInt(args[4]);
+        int staleness = Integer.parseInt(args[5]);
+        int vocabularySize = new MappedCorpus(Paths.get(corpusPath)).getVocabularySize();
+
+        long start = System.nanoTime();
+        try (ParameterServer server = new ParameterServer(numWorkers, numTopics, vocabularySize, staleness, 0)) {
+            List<Process> workers = new ArrayList<Process>();
+            for (int worker = 0; worker < numWorkers; worker++) {
+                List<String> command = new ArrayList<String>();
+                command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+                if (Kernels.isVectorAvailable()) {
+                    command.add("--add-modules");
+                    command.add("jdk.incubator.vector");
+                }
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add(ParameterServerWorker.class.getName());
+                command.addAll(Arrays.asList(corpusPath, sampler, Integer.toString(numTopics),
+                        Integer.toString(worker), Integer.toString(numWorkers), Integer.toString(server.getPort()),
+                        Integer.toString(iterations)));
+                if (args.length > 6) {
+                    command.add(args[6]);
+                }
+                Process process = new ProcessBuilder(command).inheritIO().start();
+                // a worker that dies before it registers would otherwise block the others forever
+                int id = worker;
+                process.onExit().thenAccept(p -> {
+                    if (p.exitValue() != 0) {
+                        server.fail(id);
+                    }
+                });
+                workers.add(process);
+            }
+
+            int failed = 0;
+            for (Process worker : workers) {
+                failed += worker.waitFor() == 0 ? 0 : 1;
+            }
+            server.awaitWorkers();
+            System.out.printf("%d workers finished %d iterations in %.1f s, %d failed%n", numWorkers, iterations,
+                    (System.nanoTime() - start) / 1e9, failed);
+            if (failed > 0) {
+                System.exit(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package tu.dortmund.lda.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import tu.dortmund.lda.data_structure.TopicWordMatrix;
+import tu.dortmund.lda.data_structure.WordMajorTopicWordMatrix;
+
+/**
+ * Holds the global topic word counts and topic counts of a model that several
+ * worker processes train together, see {@link ParameterServerWorker}. Every
+ * worker samples its own shard of the documents. Before an iteration it pulls
+ * the rows of its words, afterwards it pushes the changes of the counts in a
+ * single batch.
+ *
+ * The workers are synchronized with a stale synchronous parallel (SSP) clock.
+ * The clock of a worker is the number of iterations it has pushed, where the
+ * initial counts are iteration 0. A pull for iteration c waits until every
+ * worker has pushed iteration c - 1 - staleness, so no worker is more than
+ * staleness iterations ahead of the slowest one. A staleness of 0 gives bulk
+ * synchronous AD-LDA.
+ *
+ * A worker that never registers or crashes holds back the others forever, so
+ * whoever runs the worker processes reports such a worker with
+ * {@link #fail(int)}. From then on every pull fails, such that the other
+ * workers stop instead of training on a model without the failed shard.
+ *
+ * The server listens on a TCP port and handles every worker on its own thread.
+ * The protocol is a sequence of requests from the worker, each one an int
+ * code followed by its ints:
+ * <ul>
+ * <li>REGISTER worker numTopics vocabularySize, answered with the number of
+ * workers.</li>
+ * <li>PULL clock numWords words..., answered with the topic counts and the
+ * rows of the words.</li>
+ * <li>PUSH clock topicDeltas... numDeltas (word topic delta)..., without an
+ * answer.</li>
+ * <li>BYE, after which the worker no longer holds back the others.</li>
+ * </ul>
+ */
+public class ParameterServer implements Closeable {
+
+    static final int REGISTER = 1;
+    static final int PULL = 2;
+    static final int PUSH = 3;
+    static final int BYE = 4;
+
+    /**
+     * Clock of a worker that has not pushed its initial counts yet.
+     */
+    private static final int UNREGISTERED = -1;
+    private static final int FINISHED = Integer.MAX_VALUE;
+
+    private final int numWorkers;
+    private final int numTopics;
+    private final int vocabularySize;
+    private final int staleness;
+
+    /**
+     * The global counts, guarded by this.
+     */
+    private final TopicWordMatrix matTopicWord;
+    private final int[] vecTopic;
+    private final int[] clocks;
+    private int numFinished;
+    private int failedWorker = -1;
+
+    private final ServerSocket serverSocket;
+    private final Thread acceptor;
+    private final List<Socket> connections = new ArrayList<Socket>();
+
+    /**
+     * Starts a server on the loopback interface.
+     *
+     * @param port Port to listen on, 0 for any free port.
+     */
+    public ParameterServer(int numWorkers, int numTopics, int vocabularySize, int staleness, int port)
+            throws IOException {
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException("Number of workers must be positive: " + numWorkers);
+        }
+        if (staleness < 0) {
+            throw new IllegalArgumentException("Staleness must not be negative: " + staleness);
+        }
+        this.numWorkers = numWorkers;
+        this.numTopics = numTopics;
+        this.vocabularySize = vocabularySize;
+        this.staleness = staleness;
+        this.matTopicWord = WordMajorTopicWordMatrix.create(numTopics, vocabularySize);
+        this.vecTopic = new int[numTopics];
+        this.clocks = new int[numWorkers];
+        Arrays.fill(clocks, UNREGISTERED);
+
+        this.serverSocket = new ServerSocket(port, numWorkers, InetAddress.getLoopbackAddress());
+        this.acceptor = new Thread(this::accept, "parameter-server");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void accept() {
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket socket = serverSocket.accept();
+                synchronized (connections) {
+                    connections.add(socket);
+                }
+                Thread handler = new Thread(() -> handle(socket), "parameter-server-worker");
+                handler.setDaemon(true);
+                handler.start();
+            }
+        } catch (IOException e) {
+            // the server socket was closed
+        }
+    }
+
+    /**
+     * Serves the requests of a single worker until it says goodbye or the
+     * connection breaks. A broken connection finishes the worker, such that the
+     * others are not blocked forever.
+     */
+    private void handle(Socket socket) {
+        int worker = -1;
+        try (Socket s = socket;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            while (true) {
+                int request = in.readInt();
+                switch (request) {
+                case REGISTER:
+                    worker = register(in);
+                    out.writeInt(numWorkers);
+                    out.flush();
+                    break;
+                case PULL:
+                    pull(in, out);
+                    out.flush();
+                    break;
+                case PUSH:
+                    push(worker, in);
+                    break;
+                case BYE:
+                    return;
+                default:
+                    throw new IOException("Unknown request " + request);
+                }
+            }
+        } catch (EOFException e) {
+            // the worker closed the connection
+        } catch (IOException | InterruptedException e) {
+            if (!serverSocket.isClosed()) {
+                System.err.println("Parameter server lost worker " + worker + ": " + e);
+            }
+        } finally {
+            if (worker >= 0) {
+                finish(worker);
+            }
+        }
+    }
+
+    private int register(DataInputStream in) throws IOException {
+        int worker = in.readInt();
+        int topics = in.readInt();
+        int words = in.readInt();
+        if (worker < 0 || worker >= numWorkers) {
+            throw new IOException("Worker " + worker + " is outside of [0, " + numWorkers + ")");
+        }
+        if (topics != numTopics || words != vocabularySize) {
+            throw new IOException("Worker " + worker + " has " + topics + " topics and " + words
+                    + " words instead of " + numTopics + " and " + vocabularySize);
+        }
+        return worker;
+    }
+
+    private void pull(DataInputStream in, DataOutputStream out) throws IOException, InterruptedException {
+        int clock = in.readInt();
+        int[] words = new int[in.readInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readInt();
+        }
+        int[] topicCounts;
+        int[] rows = new int[words.length * numTopics];
+        synchronized (this) {
+            // every worker has to push its initial counts first
+            while (failedWorker < 0 && getMinClock() < Math.max(0, clock - 1 - staleness)) {
+                wait();
+            }
+            if (failedWorker >= 0) {
+                throw new IOException("Worker " + failedWorker + " failed");
+            }
+            topicCounts = vecTopic.clone();
+            for (int i = 0; i < words.length; i++) {
+                for (int topic = 0; topic < numTopics; topic++) {
+                    rows[i * numTopics + topic] = matTopicWord.get(topic, words[i]);
+                }
+            }
+        }
+        // the answer is written outside of the lock, such that a slow connection does not block the others
+        for (int count : topicCounts) {
+            out.writeInt(count);
+        }
+        for (int count : rows) {
+            out.writeInt(count);
+        }
+    }
+
+    private void push(int worker, DataInputStream in) throws IOException {
+        if (worker < 0) {
+            throw new IOException("A worker has to register before it can push");
+        }
+        int clock = in.readInt();
+        int[] topicDeltas = new int[numTopics];
+        for (int topic = 0; topic < numTopics; topic++) {
+            topicDeltas[topic] = in.readInt();
+        }
+        int[] deltas = new int[3 * in.readInt()];
+        for (int i = 0; i < deltas.length; i++) {
+            deltas[i] = in.readInt();
+        }
+        synchronized (this) {
+            for (int topic = 0; topic < numTopics; topic++) {
+                vecTopic[topic] += topicDeltas[topic];
+            }
+            for (int i = 0; i < deltas.length; i += 3) {
+                matTopicWord.add(deltas[i + 1], deltas[i], deltas[i + 2]);
+            }
+            clocks[worker] = clock;
+            notifyAll();
+        }
+    }
+
+    private synchronized void finish(int worker) {
+        if (clocks[worker] != FINISHED) {
+            clocks[worker] = FINISHED;
+            numFinished++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Marks a worker as failed, for example because its process exited before
+     * it said goodbye. The worker no longer holds back the others or
+     * {@link #awaitWorkers()}, and all pending and later pulls fail.
+     */
+    public synchronized void fail(int worker) {
+        if (failedWorker < 0) {
+            failedWorker = worker;
+        }
+        finish(worker);
+    }
+
+    private int getMinClock() {
+        int min = FINISHED;
+        for (int clock : clocks) {
+            min = Math.min(min, clock);
+        }
+        return min;
+    }
+
+    /**
+     * Blocks until every worker has said goodbye or failed.
+     */
+    public synchronized void awaitWorkers() throws InterruptedException {
+        while (numFinished < numWorkers) {
+            wait();
+        }
+    }
+
+    /**
+     * @return A copy of the global number of tokens per topic.
+     */
+    public synchronized int[] getTopicCounts() {
+        return vecTopic.clone();
+    }
+
+    /**
+     * @return The global topic word distributions, as in
+     *         {@link tu.dortmund.lda.LdaModel#getPhi()}.
+     */
+    public synchronized double[][] getPhi(double[] beta) {
+        double betaSum = 0.0;
+        for (double b : beta) {
+            betaSum += b;
+        }
+        double[][] phi = new double[numTopics][vocabularySize];
+        for (int word = 0; word < vocabularySize; word++) {
+            for (int topic = 0; topic < numTopics; topic++) {
+                phi[topic][word] = (matTopicWord.get(topic, word) + beta[word]) / (vecTopic[topic] + betaSum);
+            }
+        }
+        return phi;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        synchronized (connections) {
+            for (Socket socket : connections) {
+                socket.close();
+            }
+        }
+    }
+}
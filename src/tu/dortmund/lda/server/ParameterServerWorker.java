@@ -0,0 +1,216 @@
+package tu.dortmund.lda.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import tu.dortmund.lda.corpus.Corpus;
+import tu.dortmund.lda.corpus.MappedCorpus;
+import tu.dortmund.lda.corpus.ShardCorpus;
+import tu.dortmund.lda.sampler.GibbsLda;
+
+/**
+ * Trains a model on a shard of the documents together with other workers
+ * through a {@link ParameterServer}. The model can be any GibbsLda subclass
+ * that samples against its topic word counts, it only sees the documents of
+ * its shard. After it was initialized, the worker pushes its initial counts.
+ * Every iteration then pulls the global counts of the words of the shard,
+ * runs one sweep of the model and pushes the changes of the counts in a single
+ * batch. The changes of all workers add up like in AD-LDA.
+ */
+public class ParameterServerWorker implements Closeable {
+
+    private final GibbsLda model;
+    private final int numTopics;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    /**
+     * The words that occur in the shard, the only rows the model changes.
+     */
+    private final int[] words;
+    private final int[] pulledRows;
+    private final int[] sampledRows;
+    private int[] pulledTopicCounts;
+
+    private int clock = 0;
+
+    /**
+     * Connects to the server and pushes the initial counts of the model.
+     *
+     * @param model  An initialized model of the documents of this worker.
+     * @param worker Index of the worker between 0 and the number of workers - 1.
+     */
+    public ParameterServerWorker(GibbsLda model, int worker, String host, int port) throws IOException {
+        this.model = model;
+        this.numTopics = model.getNumTopics();
+
+        // the rows that are not zero after the initialization belong to the words of the shard
+        int vocabularySize = model.getVocabularySize();
+        int[] allWords = new int[vocabularySize];
+        int[] singleWord = new int[1];
+        int[] row = new int[numTopics];
+        int numWords = 0;
+        for (int word = 0; word < vocabularySize; word++) {
+            singleWord[0] = word;
+            model.getTopicWordCounts(singleWord, row);
+            if (hasCounts(row)) {
+                allWords[numWords++] = word;
+            }
+        }
+        if ((long) numWords * numTopics > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("The " + numWords + " words of the shard do not fit into a single pull");
+        }
+        this.words = Arrays.copyOf(allWords, numWords);
+        this.pulledRows = new int[numWords * numTopics];
+        this.sampledRows = new int[numWords * numTopics];
+        this.pulledTopicCounts = new int[numTopics];
+
+        this.socket = new Socket(host, port);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        out.writeInt(ParameterServer.REGISTER);
+        out.writeInt(worker);
+        out.writeInt(numTopics);
+        out.writeInt(vocabularySize);
+        out.flush();
+        in.readInt();
+
+        // the initial counts are the changes against a model without any tokens
+        push();
+    }
+
+    private static boolean hasCounts(int[] row) {
+        for (int count : row) {
+            if (count != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs the given number of iterations, each one against the global counts
+     * that the server hands out for it.
+     */
+    public void run(int iterations) throws IOException {
+        for (int i = 0; i < iterations; i++) {
+            pull();
+            model.run(1);
+            push();
+        }
+    }
+
+    /**
+     * Replaces the counts of the model with the global counts of the next
+     * iteration, which blocks while this worker is too far ahead of the others.
+     */
+    private void pull() throws IOException {
+        out.writeInt(ParameterServer.PULL);
+        out.writeInt(clock);
+        out.writeInt(words.length);
+        for (int word : words) {
+            out.writeInt(word);
+        }
+        out.flush();
+        for (int topic = 0; topic < numTopics; topic++) {
+            pulledTopicCounts[topic] = in.readInt();
+        }
+        for (int i = 0; i < pulledRows.length; i++) {
+            pulledRows[i] = in.readInt();
+        }
+        model.setTopicWordCounts(words, pulledRows, pulledTopicCounts);
+    }
+
+    /**
+     * Sends the changes of the counts since the last pull and advances the
+     * clock.
+     */
+    private void push() throws IOException {
+        model.getTopicWordCounts(words, sampledRows);
+        int[] topicCounts = model.getTopicCounts();
+        int numDeltas = 0;
+        for (int i = 0; i < sampledRows.length; i++) {
+            numDeltas += sampledRows[i] != pulledRows[i] ? 1 : 0;
+        }
+
+        out.writeInt(ParameterServer.PUSH);
+        out.writeInt(clock);
+        for (int topic = 0; topic < numTopics; topic++) {
+            out.writeInt(topicCounts[topic] - pulledTopicCounts[topic]);
+        }
+        out.writeInt(numDeltas);
+        for (int i = 0; i < sampledRows.length; i++) {
+            if (sampledRows[i] != pulledRows[i]) {
+                out.writeInt(words[i / numTopics]);
+                out.writeInt(i % numTopics);
+                out.writeInt(sampledRows[i] - pulledRows[i]);
+            }
+        }
+        out.flush();
+        clock++;
+    }
+
+    /**
+     * Tells the server that this worker is done, so it does not hold back the
+     * others any longer, and closes the connection.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            out.writeInt(ParameterServer.BYE);
+            out.flush();
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Runs a worker process on the loopback interface.
+     *
+     * Usage: ParameterServerWorker corpus sampler numTopics worker numWorkers
+     * port iterations [seed]
+     *
+     * The corpus is a file written by {@link tu.dortmund.lda.corpus.CorpusWriter}
+     * and is split into numWorkers shards. The sampler is the simple name of a
+     * class in tu.dortmund.lda.sampler, for example SparseLda.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 7) {
+            System.err.println(
+                    "Usage: ParameterServerWorker corpus sampler numTopics worker numWorkers port iterations [seed]");
+            System.exit(1);
+        }
+        MappedCorpus corpus = new MappedCorpus(Paths.get(args[0]));
+        int numTopics = Integer.parseInt(args[2]);
+        int worker = Integer.parseInt(args[3]);
+        int numWorkers = Integer.parseInt(args[4]);
+        int port = Integer.parseInt(args[5]);
+        int iterations = Integer.parseInt(args[6]);
+
+        Corpus shard = ShardCorpus.of(corpus, worker, numWorkers);
+        GibbsLda model = (GibbsLda) Class.forName("tu.dortmund.lda.sampler." + args[1])
+                .getConstructor(Corpus.class, int.class, int.class)
+                .newInstance(shard, corpus.getVocabularySize(), numTopics);
+        if (args.length > 7) {
+            model.setSeed(Long.parseLong(args[7]) + worker);
+        }
+        model.initialize();
+
+        long start = System.nanoTime();
+        try (ParameterServerWorker client = new ParameterServerWorker(model, worker,
+                InetAddress.getLoopbackAddress().getHostAddress(), port)) {
+            client.run(iterations);
+        }
+        System.out.printf("Worker %d sampled %d documents in %.1f s, shard log likelihood %.1f%n", worker,
+                shard.getNumDocuments(), (System.nanoTime() - start) / 1e9, model.getLogLikelihood());
+    }
+}